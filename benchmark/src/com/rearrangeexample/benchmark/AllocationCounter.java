@@ -0,0 +1,43 @@
+package com.rearrangeexample.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Bytes allocated by the current thread, read by the benchmark and by allocation checks of plain JVM tests
+ */
+public final class AllocationCounter {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private AllocationCounter() {
+    }
+
+    /**
+     * @return true if JVM counts allocated bytes
+     */
+    public static boolean isSupported() {
+        return THREADS instanceof com.sun.management.ThreadMXBean;
+    }
+
+    /**
+     * @return bytes allocated by the current thread
+     * @throws IllegalStateException if JVM doesn't count them
+     */
+    public static long allocatedBytes() {
+        if (!isSupported()) throw new IllegalStateException("JVM doesn't count allocated bytes");
+        return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * @return bytes the counter itself takes per reading, subtracted from measured allocations
+     */
+    public static long overhead() {
+        long overhead = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) {
+            long start = allocatedBytes();
+            overhead = Math.min(overhead, allocatedBytes() - start);
+        }
+        return overhead;
+    }
+}
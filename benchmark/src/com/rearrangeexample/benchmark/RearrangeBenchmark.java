@@ -0,0 +1,365 @@
+package com.rearrangeexample.benchmark;
+
+import com.rearrangeexample.widget.HiddenPositions;
+import com.rearrangeexample.widget.HoverPath;
+import com.rearrangeexample.widget.ItemChangeLog;
+import com.rearrangeexample.widget.LongIntIndex;
+import com.rearrangeexample.widget.MovementDiff;
+import com.rearrangeexample.widget.PrefixSumTree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmarks of rearrangement hot paths which don't depend on Android classes, runs on a plain JVM.
+ * Every case calls the widget classes the views use, nothing is reimplemented here.
+ * Every case is warmed up and then measured for a fixed time, result is ops/s, bytes allocated per op
+ * and the allocation rate in bytes/s, which tells how soon the measured work would trigger a collection.
+ * Usage: RearrangeBenchmark [measure ms per case] [case name filter]
+ */
+public class RearrangeBenchmark {
+
+    private static final int[] SIZES = {30, 1000, 10000, 100000};
+    private static final String[] PATTERNS = {"reversed", "shuffled", "single-move", "local-swaps", "insert-remove"};
+    //rows a window of the windowed mode holds, visible rows and overscan on both sides
+    private static final int WINDOW = 30;
+    //frames of one hover cell animation
+    private static final int FRAMES = 30;
+
+    //results are written here so the JIT can't drop the measured work
+    private static volatile long sink;
+
+    /**
+     * Measured operation
+     */
+    private abstract static class Case {
+        final String name;
+
+        Case(String name) {
+            this.name = name;
+        }
+
+        abstract long run();
+    }
+
+    /**
+     * Array backed source of ids, stands for the adapter
+     */
+    private static class ArrayIdSource implements MovementDiff.IdSource {
+        final long[] ids;
+
+        ArrayIdSource(long[] ids) {
+            this.ids = ids;
+        }
+
+        @Override
+        public int getCount() {
+            return ids.length;
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return ids[position];
+        }
+    }
+
+    public static void main(String[] args) {
+        long measureMillis = args.length > 0 ? Long.parseLong(args[0]) : 1000;
+        String filter = args.length > 1 ? args[1] : null;
+        List<Case> cases = new ArrayList<Case>();
+        for (int size : SIZES) {
+            for (String pattern : PATTERNS) {
+                addDiffCases(cases, size, pattern);
+            }
+            addCacheCases(cases, size);
+        }
+        addHoverPathCases(cases);
+        System.out.println(String.format("%-48s %14s %14s %14s", "case", "ops/s", "bytes/op", "bytes/s"));
+        for (Case c : cases) {
+            if (filter != null && !c.name.contains(filter)) continue;
+            measure(c, measureMillis / 2);
+            double[] result = measure(c, measureMillis);
+            System.out.println(String.format("%-48s %14.1f %14.1f %14.1f", c.name, result[0], result[1],
+                    result[0] * result[1]));
+        }
+    }
+
+    /**
+     * full diff of two orders with both strategies, and the same change applied through the change log
+     */
+    private static void addDiffCases(List<Case> cases, int size, String pattern) {
+        final long[] oldIds = new long[size];
+        for (int i = 0; i < size; i++) {
+            oldIds[i] = i;
+        }
+        final ItemChangeLog log = new ItemChangeLog();
+        log.setMaxChanges(Integer.MAX_VALUE);
+        final long[] newIds = reorder(oldIds, pattern, log);
+        final MovementDiff allChanged = new MovementDiff();
+        final MovementDiff minimalMoves = new MovementDiff();
+        minimalMoves.setStrategy(MovementDiff.STRATEGY_MINIMAL_MOVES);
+        String suffix = " " + pattern + " n=" + size;
+        cases.add(new Case("diff all-changed" + suffix) {
+            @Override
+            long run() {
+                allChanged.compute(oldIds, oldIds.length, newIds, newIds.length);
+                return allChanged.size();
+            }
+        });
+        cases.add(new Case("diff minimal-moves" + suffix) {
+            @Override
+            long run() {
+                minimalMoves.compute(oldIds, oldIds.length, newIds, newIds.length);
+                return minimalMoves.size();
+            }
+        });
+        if (size > WINDOW * 2) {
+            final ArrayIdSource source = new ArrayIdSource(newIds);
+            final MovementDiff windowed = new MovementDiff();
+            final long[] oldTop = new long[WINDOW];
+            final long[] newTop = new long[WINDOW];
+            final long[] oldMiddle = new long[WINDOW];
+            final long[] newMiddle = new long[WINDOW];
+            final int middle = size / 2;
+            System.arraycopy(oldIds, 0, oldTop, 0, WINDOW);
+            System.arraycopy(newIds, 0, newTop, 0, WINDOW);
+            System.arraycopy(oldIds, middle, oldMiddle, 0, WINDOW);
+            System.arraycopy(newIds, middle, newMiddle, 0, WINDOW);
+            //window at position 0 has no positions above it, rows entering it from above take a sentinel
+            cases.add(new Case("diff window top" + suffix) {
+                @Override
+                long run() {
+                    windowed.computeWindow(oldTop, 0, WINDOW, newTop, 0, WINDOW, source, WINDOW);
+                    return windowed.size();
+                }
+            });
+            cases.add(new Case("diff window middle" + suffix) {
+                @Override
+                long run() {
+                    windowed.computeWindow(oldMiddle, middle, WINDOW, newMiddle, middle, WINDOW, source, WINDOW);
+                    return windowed.size();
+                }
+            });
+        }
+        if (log.isIncremental()) {
+            final MovementDiff incremental = new MovementDiff();
+            final int visible = Math.min(size, 12);
+            cases.add(new Case("diff change-log" + suffix) {
+                @Override
+                long run() {
+                    incremental.computeChanges(log, 0, visible, 0, Math.min(visible, newIds.length));
+                    return incremental.size();
+                }
+            });
+        }
+        //cached order is updated by the change log instead of being read again, inserted ids come from the source.
+        //Views drop logs longer than the default limit, so only those are updated this way
+        if (log.isIncremental() && log.size() <= ItemChangeLog.DEFAULT_MAX_CHANGES) {
+            final ArrayIdSource source = new ArrayIdSource(newIds);
+            final long[] order = new long[size + log.getInsertedItems()];
+            cases.add(new Case("id order change-log update" + suffix) {
+                @Override
+                long run() {
+                    System.arraycopy(oldIds, 0, order, 0, oldIds.length);
+                    return log.applyTo(order, oldIds.length, source);
+                }
+            });
+        }
+    }
+
+    /**
+     * reading of the id order, position index of in-flight cells, hidden rows and row offsets
+     */
+    private static void addCacheCases(List<Case> cases, final int size) {
+        final long[] adapterIds = new long[size];
+        for (int i = 0; i < size; i++) {
+            adapterIds[i] = i * 31L;
+        }
+        final ArrayIdSource source = new ArrayIdSource(adapterIds);
+        final long[][] cache = {new long[size]};
+        cases.add(new Case("id order read n=" + size) {
+            @Override
+            long run() {
+                cache[0] = MovementDiff.readIds(source, 0, size, cache[0]);
+                return cache[0][size - 1];
+            }
+        });
+
+        //destinations of in-flight cells are indexed on every data change and looked up for every visible row
+        Random random = new Random(size);
+        final int[] cellPositions = new int[Math.min(size, 20)];
+        for (int i = 0; i < cellPositions.length; i++) {
+            cellPositions[i] = random.nextInt(size);
+        }
+        final LongIntIndex positions = new LongIntIndex();
+        final int visible = Math.min(size, WINDOW);
+        final int first = Math.max(0, size / 2 - visible / 2);
+        cases.add(new Case("cell position index build+lookup n=" + size) {
+            @Override
+            long run() {
+                positions.reset(cellPositions.length);
+                for (int i = 0; i < cellPositions.length; i++) {
+                    positions.putIfAbsent(cellPositions[i], i);
+                }
+                long found = 0;
+                for (int position = first; position < first + visible; position++) {
+                    if (positions.get(position, MovementDiff.POSITION_NONE) != MovementDiff.POSITION_NONE) found++;
+                }
+                return found;
+            }
+        });
+
+        //rows of moving cells are hidden in a batch when a rearrangement starts, every bind looks its row up,
+        //and the set is cleared when cells land
+        final HiddenPositions hidden = new HiddenPositions();
+        cases.add(new Case("hidden positions add+lookup+clear n=" + size) {
+            @Override
+            long run() {
+                hidden.addAll(cellPositions, cellPositions.length);
+                long found = 0;
+                for (int position = first; position < first + visible; position++) {
+                    if (hidden.contains(position)) found++;
+                }
+                hidden.clear();
+                return found;
+            }
+        });
+
+        final int[] heights = new int[size];
+        for (int i = 0; i < size; i++) {
+            heights[i] = 48 + random.nextInt(3) * 24;
+        }
+        final PrefixSumTree offsets = new PrefixSumTree();
+        cases.add(new Case("row offsets build+query n=" + size) {
+            @Override
+            long run() {
+                offsets.build(heights, size);
+                long sum = 0;
+                for (int i = 0; i < size; i += 7) {
+                    sum += offsets.prefixSum(i);
+                }
+                return sum;
+            }
+        });
+    }
+
+    /**
+     * frames of a hover cell animation and its retargeting halfway
+     */
+    private static void addHoverPathCases(List<Case> cases) {
+        final HoverPath path = new HoverPath();
+        path.setAlphaRange(255, 0);
+        cases.add(new Case("hover path frames x" + (FRAMES + 1)) {
+            @Override
+            long run() {
+                path.setStart(0, 100, 480, 196);
+                path.setEnd(0, 500, 480, 596);
+                long sum = 0;
+                for (int frame = 0; frame <= FRAMES; frame++) {
+                    path.setFraction((float) frame / FRAMES);
+                    sum += path.getTop();
+                }
+                return sum;
+            }
+        });
+        cases.add(new Case("hover path retarget+frames x" + (FRAMES + 1)) {
+            @Override
+            long run() {
+                path.setStart(0, 100, 480, 196);
+                path.setEnd(0, 500, 480, 596);
+                path.setFraction(0.5f);
+                path.freeze();
+                path.setEnd(0, 0, 480, 96);
+                long sum = 0;
+                for (int frame = 0; frame <= FRAMES; frame++) {
+                    path.setFraction((float) frame / FRAMES);
+                    sum += path.getTop() + path.getAlpha();
+                }
+                return sum;
+            }
+        });
+    }
+
+    /**
+     * @return copy of ids reordered by the pattern, changes which lead to it are logged if they are simple enough
+     */
+    private static long[] reorder(long[] ids, String pattern, ItemChangeLog log) {
+        int size = ids.length;
+        Random random = new Random(size * 31 + pattern.hashCode());
+        long[] result = new long[size];
+        System.arraycopy(ids, 0, result, 0, size);
+        if ("reversed".equals(pattern)) {
+            for (int i = 0; i < size; i++) {
+                result[i] = ids[size - 1 - i];
+            }
+            log.invalidate();
+        }
+        else if ("shuffled".equals(pattern)) {
+            for (int i = size - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                long id = result[i];
+                result[i] = result[j];
+                result[j] = id;
+            }
+            log.invalidate();
+        }
+        else if ("single-move".equals(pattern)) {
+            int from = size - 1;
+            long id = result[from];
+            System.arraycopy(result, 0, result, 1, from);
+            result[0] = id;
+            log.addMove(from, 0, 1);
+        }
+        else if ("local-swaps".equals(pattern)) {
+            for (int k = 0; k < Math.max(1, size / 100); k++) {
+                int i = random.nextInt(size - 1);
+                long id = result[i];
+                result[i] = result[i + 1];
+                result[i + 1] = id;
+                log.addMove(i, i + 1, 1);
+            }
+        }
+        else {
+            //a tenth of items is removed and replaced with new ones at random places
+            List<Long> list = new ArrayList<Long>(size);
+            for (long id : ids) {
+                list.add(id);
+            }
+            long nextId = size;
+            for (int k = 0; k < Math.max(1, size / 10); k++) {
+                int removed = random.nextInt(list.size());
+                list.remove(removed);
+                log.addRemove(removed, 1);
+                int inserted = random.nextInt(list.size() + 1);
+                list.add(inserted, nextId++);
+                log.addInsert(inserted, 1);
+            }
+            for (int i = 0; i < size; i++) {
+                result[i] = list.get(i);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return ops/s and bytes allocated per op, NaN bytes if JVM doesn't count them
+     */
+    private static double[] measure(Case c, long millis) {
+        boolean counted = AllocationCounter.isSupported();
+        long startBytes = counted ? AllocationCounter.allocatedBytes() : 0;
+        long start = System.nanoTime();
+        long deadline = start + millis * 1000000L;
+        long ops = 0;
+        long result = 0;
+        long now;
+        do {
+            result += c.run();
+            ops++;
+            now = System.nanoTime();
+        } while (now < deadline);
+        long bytes = counted ? AllocationCounter.allocatedBytes() - startBytes : 0;
+        sink = result;
+        return new double[]{ops * 1e9 / (now - start), counted ? (double) bytes / ops : Double.NaN};
+    }
+}
@@ -2,6 +2,7 @@ package com.rearrangeexample;
 
 import android.app.Activity;
 import android.os.Bundle;
+import android.os.Handler;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
@@ -11,22 +12,47 @@ import android.widget.TextView;
 import com.rearrangeexample.widget.RearrangeAdapterWrapper;
 import com.rearrangeexample.widget.RearrangeListView;
 
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author V.Bolnykh
- * Demo Activity for working with RearrangeListView
+ * Demo Activity for working with RearrangeListView.
+ * In stress mode the list shows up to a million items, data set is created and sorted in background
+ * and the new order is published to the adapter on the main thread at once
  */
 public class DemoActivity extends Activity {
 
+    /**
+     * number of items in stress mode, int extra, not more than a million
+     */
+    public static final String EXTRA_STRESS_ITEM_COUNT = "stress_item_count";
+
+    private static final int DEFAULT_ITEM_COUNT = 30;
+    private static final int DEFAULT_STRESS_ITEM_COUNT = DemoDataSet.MAX_ITEMS;
+    //bigger data sets are compared only around the visible rows
+    private static final int WINDOWED_MODE_THRESHOLD = 10000;
+
     private RearrangeListView listView;
-    private List<TestItem> itemList;
+    //data set and order are replaced only on the main thread, together
+    private DemoDataSet dataSet;
+    private int[] order;
     RearrangeAdapterWrapper adapter;
 
     private static final int SORT_ID_POSITION = 1;
     private static final int SORT_DATE_POSITION = 2;
+    private static final int STRESS_MODE_POSITION = 3;
+    private static final int DRAG_MODE_POSITION = 4;
+
+    private final Handler handler = new Handler();
+    private final int threads = Runtime.getRuntime().availableProcessors();
+    //single thread which prepares data sets and orders, only the latest task publishes its result
+    private final ExecutorService backgroundExecutor = Executors.newSingleThreadExecutor();
+    private final ExecutorService sortPool = Executors.newFixedThreadPool(threads);
+    private final AtomicInteger generation = new AtomicInteger();
+    private boolean stressMode = false;
+    private boolean dragMode = false;
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
@@ -34,25 +60,86 @@ public class DemoActivity extends Activity {
         setContentView(R.layout.main);
 
         listView = (RearrangeListView) findViewById(R.id.list);
-        prepareDataSet(30);
+        listView.setAnimationDuration(500);
+        listView.setOnItemMovedListener(new RearrangeListView.OnItemMovedListener() {
+            @Override
+            public void onItemMoved(int fromPosition, int toPosition) {
+                int item = order[fromPosition];
+                if (fromPosition < toPosition) System.arraycopy(order, fromPosition + 1, order, fromPosition, toPosition - fromPosition);
+                else System.arraycopy(order, toPosition, order, toPosition + 1, fromPosition - toPosition);
+                order[toPosition] = item;
+                adapter.notifyItemMoved(fromPosition, toPosition);
+            }
+        });
+        prepareDataSet(DEFAULT_ITEM_COUNT);
     }
 
-    private void prepareDataSet(int length) {
-        itemList = new ArrayList<TestItem>(length);
-        for (int i=0; i<length; i++) {
-            TestItem item = new TestItem();
-            item.setId(i);
-            long currentTime = new Date().getTime();
-            item.setDate(new Date(currentTime - (long)(Math.random() * currentTime)));
-            itemList.add(item);
-        }
-        adapter = new RearrangeAdapterWrapper(new TestAdapter());
-        listView.setAdapter(adapter);
-        listView.setAnimationDuration(500);
+    @Override
+    protected void onDestroy() {
+        generation.incrementAndGet();
+        backgroundExecutor.shutdownNow();
+        sortPool.shutdownNow();
+        super.onDestroy();
+    }
+
+    /**
+     * create data set in background and show it in its initial order
+     * @param length number of items
+     */
+    private void prepareDataSet(final int length) {
+        final int taskGeneration = generation.incrementAndGet();
+        backgroundExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final DemoDataSet newDataSet = DemoDataSet.create(length);
+                final int[] newOrder = newDataSet.initialOrder();
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation.get() != taskGeneration) return;
+                        dataSet = newDataSet;
+                        order = newOrder;
+                        listView.setWindowedMode(length > WINDOWED_MODE_THRESHOLD);
+                        adapter = new RearrangeAdapterWrapper(new TestAdapter());
+                        listView.setAdapter(adapter);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * sort current data set in background and publish the new order
+     * @param sortType DemoDataSet.SORT_BY_ID or DemoDataSet.SORT_BY_DATE
+     */
+    private void sort(final int sortType) {
+        if (dataSet == null) return;
+        final DemoDataSet sortedDataSet = dataSet;
+        final int taskGeneration = generation.incrementAndGet();
+        backgroundExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final int[] newOrder;
+                try {
+                    newOrder = sortedDataSet.sort(sortType, sortPool, threads);
+                }
+                catch (Exception e) {
+                    //activity is destroyed
+                    return;
+                }
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation.get() != taskGeneration || dataSet != sortedDataSet) return;
+                        order = newOrder;
+                        adapter.notifyDataSetChanged();
+                    }
+                });
+            }
+        });
     }
 
     private class TestAdapter extends BaseAdapter {
-        DateFormat format = new SimpleDateFormat("dd-MM-yyyy");
 
         @Override
         public boolean hasStableIds() {
@@ -61,30 +148,30 @@ public class DemoActivity extends Activity {
 
         @Override
         public int getCount() {
-            return itemList.size();
+            return order.length;
         }
 
         @Override
         public Object getItem(int position) {
-            return itemList.get(position);
+            return dataSet.names[order[position]];
         }
 
         @Override
         public long getItemId(int position) {
-            return itemList.get(position).getId();
+            return order[position];
         }
 
         @Override
         public View getView(int position, View convertView, ViewGroup parent) {
             ItemHolder holder;
             if (convertView == null) {
-                convertView = getLayoutInflater().inflate(R.layout.list_view_cell, null);
+                convertView = getLayoutInflater().inflate(R.layout.list_view_cell, parent, false);
                 holder = new ItemHolder();
                 holder.bindViews(convertView);
                 convertView.setTag(holder);
             }
             holder = (ItemHolder) convertView.getTag();
-            holder.initViews(itemList.get(position));
+            holder.initViews(order[position]);
             return convertView;
         }
 
@@ -98,9 +185,10 @@ public class DemoActivity extends Activity {
                 date = (TextView) root.findViewById(R.id.date);
             }
 
-            private void initViews(TestItem item) {
-                name.setText("Item " + Long.toString(item.getId()));
-                date.setText(format.format(item.getDate()));
+            private void initViews(int item) {
+                //labels are formatted when the data set is created
+                name.setText(dataSet.names[item]);
+                date.setText(dataSet.dateLabels[item]);
             }
         }
     }
@@ -110,54 +198,44 @@ public class DemoActivity extends Activity {
     public boolean onCreateOptionsMenu(Menu menu) {
         menu.add(1, SORT_ID_POSITION, Menu.NONE,getString(R.string.sor_by_id));
         menu.add(1, SORT_DATE_POSITION, Menu.NONE,getString(R.string.sort_by_date));
+        menu.add(2, STRESS_MODE_POSITION, Menu.NONE, getString(R.string.stress_mode)).setCheckable(true);
+        menu.add(2, DRAG_MODE_POSITION, Menu.NONE, getString(R.string.drag_mode)).setCheckable(true);
         return super.onCreateOptionsMenu(menu);
     }
 
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        //menu is opened before a sort, snapshots of rows are drawn while the user picks one
+        listView.prepareForRearrange();
+        return super.onPrepareOptionsMenu(menu);
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         switch (item.getItemId()) {
             case SORT_ID_POSITION:{
-                Collections.sort(itemList, new Comparator<TestItem>() {
-                    @Override
-                    public int compare(TestItem lhs, TestItem rhs) {
-                        return lhs.getId() - rhs.getId();
-                    }
-                });
+                sort(DemoDataSet.SORT_BY_ID);
                 break;
             }
             case SORT_DATE_POSITION:{
-                Collections.sort(itemList, new Comparator<TestItem>() {
-                    @Override
-                    public int compare(TestItem lhs, TestItem rhs) {
-                        return rhs.getDate().compareTo(lhs.getDate());
-                    }
-                });
+                sort(DemoDataSet.SORT_BY_DATE);
+                break;
+            }
+            case STRESS_MODE_POSITION:{
+                stressMode = !stressMode;
+                item.setChecked(stressMode);
+                int stressItemCount = getIntent().getIntExtra(EXTRA_STRESS_ITEM_COUNT, DEFAULT_STRESS_ITEM_COUNT);
+                prepareDataSet(stressMode ? Math.max(0, Math.min(stressItemCount, DemoDataSet.MAX_ITEMS)) : DEFAULT_ITEM_COUNT);
+                break;
+            }
+            case DRAG_MODE_POSITION:{
+                dragMode = !dragMode;
+                item.setChecked(dragMode);
+                listView.setDragEnabled(dragMode);
                 break;
             }
 
         }
-        adapter.notifyDataSetChanged();
         return super.onOptionsItemSelected(item);
     }
-
-    private class TestItem {
-        private int id;
-        private Date date;
-
-        public int getId() {
-            return id;
-        }
-
-        public void setId(int id) {
-            this.id = id;
-        }
-
-        public Date getDate() {
-            return date;
-        }
-
-        public void setDate(Date date) {
-            this.date = date;
-        }
-    }
 }
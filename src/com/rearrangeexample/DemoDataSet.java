@@ -0,0 +1,164 @@
+package com.rearrangeexample;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Items of the demo kept in primitive arrays, item id is its index. Labels are formatted once when
+ * the data set is created, so binding a row only looks them up. Orders are sorted in parallel chunks
+ * of packed primitive keys, key in the high bits and item index in the low ones, and chunks are merged afterwards
+ */
+class DemoDataSet {
+
+    static final int SORT_BY_ID = 0;
+    static final int SORT_BY_DATE = 1;
+
+    private static final int INDEX_BITS = 20;
+    private static final long INDEX_MASK = (1L << INDEX_BITS) - 1;
+    static final int MAX_ITEMS = 1000000;
+    //dates are kept below 2^43 ms, so a packed key stays positive
+    private static final long MAX_DATE = (1L << (63 - INDEX_BITS)) - 1;
+    //chunks smaller than that are not worth a thread
+    private static final int MIN_CHUNK = 16 * 1024;
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    final int size;
+    final long[] dates;
+    final String[] names;
+    final String[] dateLabels;
+
+    private DemoDataSet(int size) {
+        this.size = size;
+        dates = new long[size];
+        names = new String[size];
+        dateLabels = new String[size];
+    }
+
+    /**
+     * create items with random dates, should be called in background for big sizes
+     * @param size number of items, not more than MAX_ITEMS
+     * @return new data set
+     */
+    static DemoDataSet create(int size) {
+        if (size < 0 || size > MAX_ITEMS) throw new IllegalArgumentException("Size should be in 0.." + MAX_ITEMS);
+        DemoDataSet dataSet = new DemoDataSet(size);
+        DateFormat format = new SimpleDateFormat("dd-MM-yyyy");
+        TimeZone timeZone = TimeZone.getDefault();
+        //many items share a day, label of a day is formatted once
+        Map<Long, String> labelsByDay = new HashMap<Long, String>();
+        Random random = new Random();
+        long currentTime = Math.min(System.currentTimeMillis(), MAX_DATE);
+        for (int i = 0; i < size; i++) {
+            long date = currentTime - (long) (random.nextDouble() * currentTime);
+            Long day = (date + timeZone.getOffset(date)) / DAY_MILLIS;
+            String label = labelsByDay.get(day);
+            if (label == null) {
+                label = format.format(new Date(date));
+                labelsByDay.put(day, label);
+            }
+            dataSet.dates[i] = date;
+            dataSet.dateLabels[i] = label;
+            dataSet.names[i] = "Item " + i;
+        }
+        return dataSet;
+    }
+
+    /**
+     * @return item indexes in their initial order
+     */
+    int[] initialOrder() {
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        return order;
+    }
+
+    /**
+     * sort items, chunks are sorted by pool threads, should be called in background
+     * @param sortType SORT_BY_ID or SORT_BY_DATE, dates are sorted from the latest one
+     * @param pool pool which sorts chunks
+     * @param threads number of chunks to sort in parallel
+     * @return item indexes in sorted order
+     */
+    int[] sort(final int sortType, ExecutorService pool, int threads) throws InterruptedException, ExecutionException {
+        final long[] keys = new long[size];
+        int chunks = Math.max(1, Math.min(threads, size / MIN_CHUNK));
+        final int[] bounds = new int[chunks + 1];
+        for (int i = 0; i <= chunks; i++) {
+            bounds[i] = (int) ((long) size * i / chunks);
+        }
+        if (chunks == 1) {
+            sortChunk(keys, 0, size, sortType);
+        }
+        else {
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(chunks);
+            for (int i = 0; i < chunks; i++) {
+                final int from = bounds[i];
+                final int to = bounds[i + 1];
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        sortChunk(keys, from, to, sortType);
+                        return null;
+                    }
+                });
+            }
+            for (Future<Void> result : pool.invokeAll(tasks)) {
+                result.get();
+            }
+        }
+        long[] sorted = mergeChunks(keys, new long[size], bounds, chunks);
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = (int) (sorted[i] & INDEX_MASK);
+        }
+        return order;
+    }
+
+    private void sortChunk(long[] keys, int from, int to, int sortType) {
+        for (int i = from; i < to; i++) {
+            long key = sortType == SORT_BY_DATE ? MAX_DATE - dates[i] : i;
+            keys[i] = key << INDEX_BITS | i;
+        }
+        Arrays.sort(keys, from, to);
+    }
+
+    /**
+     * merge sorted chunks pairwise until one is left
+     * @return array holding the merged keys, either keys or buffer
+     */
+    private static long[] mergeChunks(long[] keys, long[] buffer, int[] bounds, int chunks) {
+        for (int width = 1; width < chunks; width *= 2) {
+            for (int left = 0; left < chunks; left += 2 * width) {
+                int from = bounds[left];
+                int middle = bounds[Math.min(left + width, chunks)];
+                int to = bounds[Math.min(left + 2 * width, chunks)];
+                int i = from;
+                int j = middle;
+                int k = from;
+                while (i < middle && j < to) {
+                    buffer[k++] = keys[i] <= keys[j] ? keys[i++] : keys[j++];
+                }
+                System.arraycopy(keys, i, buffer, k, middle - i);
+                System.arraycopy(keys, j, buffer, k + middle - i, to - j);
+            }
+            long[] merged = buffer;
+            buffer = keys;
+            keys = merged;
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,165 @@
+package com.rearrangeexample.widget;
+
+/**
+ * Limits hover cells and snapshot memory of concurrent animations. Rows over the limits fall back to a fade-in
+ * at their new place or to instant placement. In automatic mode the limit of cells follows frame times
+ * of finished animations: it is halved after janky ones and grows back after smooth ones,
+ * and rows over it are placed instantly while even the smallest limit drops frames
+ */
+public class AnimationBudget {
+
+    public static final int DEFAULT_MAX_CELLS = 64;
+    public static final long DEFAULT_MAX_SNAPSHOT_BYTES = 16 * 1024 * 1024;
+    //limit of cells never goes below that in automatic mode
+    public static final int MIN_CELLS = 4;
+
+    /**
+     * fallback is picked from frame times of finished animations
+     */
+    public static final int FALLBACK_AUTO = 0;
+    /**
+     * rows over the budget fade in at their new place, old content of the place isn't faded out,
+     * so nothing is snapshotted for them
+     */
+    public static final int FALLBACK_FADE_IN = 1;
+    /**
+     * rows over the budget are placed without animation
+     */
+    public static final int FALLBACK_INSTANT = 2;
+
+    private int maxCells = DEFAULT_MAX_CELLS;
+    private long maxSnapshotBytes = DEFAULT_MAX_SNAPSHOT_BYTES;
+    private int fallbackMode = FALLBACK_AUTO;
+
+    //limit of cells and fallback picked from measured frames
+    private int adaptiveMaxCells = DEFAULT_MAX_CELLS;
+    private int adaptiveFallback = FALLBACK_FADE_IN;
+
+    //resources of current cells
+    private int cells = 0;
+    private long snapshotBytes = 0;
+    private int overBudget = 0;
+
+    //frames of the current animation
+    private long lastFrameAt = 0;
+    private int frames = 0;
+    private int droppedFrames = 0;
+
+    /**
+     * @param maxCells number of hover cells which may be animated at once, not less than 1
+     */
+    public void setMaxCells(int maxCells) {
+        if (maxCells < 1) throw new IllegalArgumentException("Budget should allow at least one cell");
+        this.maxCells = maxCells;
+        adaptiveMaxCells = Math.min(adaptiveMaxCells, maxCells);
+    }
+
+    public int getMaxCells() {
+        return maxCells;
+    }
+
+    /**
+     * @param maxSnapshotBytes memory of snapshots which may be drawn at once
+     */
+    public void setMaxSnapshotBytes(long maxSnapshotBytes) {
+        this.maxSnapshotBytes = maxSnapshotBytes;
+    }
+
+    public long getMaxSnapshotBytes() {
+        return maxSnapshotBytes;
+    }
+
+    /**
+     * @param fallbackMode FALLBACK_AUTO, FALLBACK_FADE_IN or FALLBACK_INSTANT
+     */
+    public void setFallbackMode(int fallbackMode) {
+        if (fallbackMode != FALLBACK_AUTO && fallbackMode != FALLBACK_FADE_IN && fallbackMode != FALLBACK_INSTANT) {
+            throw new IllegalArgumentException("Unknown fallback mode " + fallbackMode);
+        }
+        this.fallbackMode = fallbackMode;
+        if (fallbackMode != FALLBACK_AUTO) adaptiveMaxCells = maxCells;
+    }
+
+    public int getFallbackMode() {
+        return fallbackMode;
+    }
+
+    /**
+     * @return limit of cells the next animation gets, lower than max cells after janky animations in automatic mode
+     */
+    public int getCurrentMaxCells() {
+        return fallbackMode == FALLBACK_AUTO ? adaptiveMaxCells : maxCells;
+    }
+
+    /**
+     * @return FALLBACK_FADE_IN or FALLBACK_INSTANT, fallback of rows over the budget in the next animation
+     */
+    public int getCurrentFallback() {
+        return fallbackMode == FALLBACK_AUTO ? adaptiveFallback : fallbackMode;
+    }
+
+    /**
+     * @return number of rows which fell back in the last rearrangement
+     */
+    public int getOverBudget() {
+        return overBudget;
+    }
+
+    /**
+     * start counting a rearrangement from resources of in-flight cells
+     */
+    void begin(int cells, long snapshotBytes) {
+        this.cells = cells;
+        this.snapshotBytes = snapshotBytes;
+        overBudget = 0;
+    }
+
+    /**
+     * @param bytes estimated memory of the cell snapshot, 0 if the cell isn't drawn from a snapshot
+     * @return true if the cell fits the budget and is counted, false if the row should fall back
+     */
+    boolean tryAcquire(long bytes) {
+        if (cells >= getCurrentMaxCells() || bytes > 0 && snapshotBytes + bytes > maxSnapshotBytes) {
+            overBudget++;
+            return false;
+        }
+        cells++;
+        snapshotBytes += bytes;
+        return true;
+    }
+
+    void onAnimationStart() {
+        lastFrameAt = 0;
+        frames = 0;
+        droppedFrames = 0;
+    }
+
+    void onFrame(long now) {
+        if (lastFrameAt != 0) {
+            droppedFrames += RearrangeMetrics.droppedFrames(now - lastFrameAt);
+        }
+        lastFrameAt = now;
+        frames++;
+    }
+
+    /**
+     * adapt limit of cells and fallback to frames of the finished animation
+     */
+    void onAnimationEnd() {
+        if (frames < 2) return;
+        int total = frames + droppedFrames;
+        if (droppedFrames * 4 > total) {
+            //more than a quarter of frames was dropped
+            if (adaptiveMaxCells > MIN_CELLS) {
+                adaptiveMaxCells = Math.max(MIN_CELLS, adaptiveMaxCells / 2);
+            }
+            else {
+                adaptiveFallback = FALLBACK_INSTANT;
+            }
+        }
+        else if (droppedFrames * 20 <= total) {
+            adaptiveFallback = FALLBACK_FADE_IN;
+            adaptiveMaxCells = Math.min(maxCells, adaptiveMaxCells + Math.max(1, adaptiveMaxCells / 4));
+        }
+    }
+}
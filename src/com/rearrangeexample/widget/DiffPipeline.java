@@ -0,0 +1,129 @@
+package com.rearrangeexample.widget;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Computes movement diffs on a background thread and delivers results through result executor,
+ * e.g. posts them to the main thread. Only the latest submitted diff is delivered,
+ * older ones are dropped before they start or before their result is posted.
+ * Submitted id arrays must not be changed until the diff is delivered or cancelled
+ */
+public class DiffPipeline {
+
+    /**
+     * Receiver of computed diffs, called by result executor
+     */
+    public interface Callback {
+        void onDiffReady(MovementDiff diff);
+    }
+
+    private final Executor resultExecutor;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "RearrangeDiff");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+    //touched only by the worker thread
+    private final MovementDiff workerDiff = new MovementDiff();
+
+    private volatile int strategy = MovementDiff.STRATEGY_ALL_CHANGED;
+
+    private final AtomicInteger generation = new AtomicInteger();
+    private final AtomicInteger submittedDiffs = new AtomicInteger();
+    private final AtomicInteger deliveredDiffs = new AtomicInteger();
+    private volatile long lastDiffNanos = 0;
+
+    /**
+     * @param resultExecutor executor which runs callbacks, normally posts to the main thread
+     */
+    public DiffPipeline(Executor resultExecutor) {
+        this.resultExecutor = resultExecutor;
+    }
+
+    /**
+     * compute diff between two orders in background, previously submitted diffs are cancelled
+     * @param oldIds ids in the old order
+     * @param oldCount number of valid entries in oldIds
+     * @param newIds ids in the new order
+     * @param newCount number of valid entries in newIds
+     * @param callback receiver of the result
+     */
+    public void submit(final long[] oldIds, final int oldCount, final long[] newIds, final int newCount,
+                       final Callback callback) {
+        final int jobGeneration = generation.incrementAndGet();
+        submittedDiffs.incrementAndGet();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (generation.get() != jobGeneration) return;
+                long start = System.nanoTime();
+                workerDiff.setStrategy(strategy);
+                workerDiff.compute(oldIds, oldCount, newIds, newCount);
+                final MovementDiff result = workerDiff.copyMovements();
+                lastDiffNanos = System.nanoTime() - start;
+                if (generation.get() != jobGeneration) return;
+                resultExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation.get() != jobGeneration) return;
+                        deliveredDiffs.incrementAndGet();
+                        callback.onDiffReady(result);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * @param strategy diff strategy used by the next computed diffs
+     * @see MovementDiff#setStrategy(int)
+     */
+    public void setStrategy(int strategy) {
+        this.strategy = strategy;
+    }
+
+    /**
+     * drop all submitted diffs which are not delivered yet
+     */
+    public void cancel() {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * cancel all diffs and stop the worker thread, pipeline can't be used after that
+     */
+    public void shutdown() {
+        cancel();
+        executor.shutdown();
+    }
+
+    public int getSubmittedDiffs() {
+        return submittedDiffs.get();
+    }
+
+    public int getDeliveredDiffs() {
+        return deliveredDiffs.get();
+    }
+
+    /**
+     * @return time the worker spent computing the last diff
+     */
+    public long getLastDiffNanos() {
+        return lastDiffNanos;
+    }
+
+    /**
+     * @return number of diffs which were superseded or cancelled, in-flight diff is counted too
+     */
+    public int getDroppedDiffs() {
+        return submittedDiffs.get() - deliveredDiffs.get();
+    }
+}
@@ -0,0 +1,42 @@
+package com.rearrangeexample.widget;
+
+import java.util.BitSet;
+
+/**
+ * Adapter positions of rows which are being moved, their views are hidden while cells are drawn over them.
+ * Bit per position, so lookups on every bind don't allocate.
+ * Doesn't depend on Android classes
+ */
+public class HiddenPositions {
+
+    private final BitSet positions = new BitSet();
+
+    /**
+     * @param position adapter position
+     */
+    public void add(int position) {
+        positions.set(position);
+    }
+
+    /**
+     * @param positions array of adapter positions
+     * @param count number of valid entries in positions
+     */
+    public void addAll(int[] positions, int count) {
+        for (int i = 0; i < count; i++) {
+            this.positions.set(positions[i]);
+        }
+    }
+
+    /**
+     * @param position adapter position
+     * @return true if the row at position is hidden
+     */
+    public boolean contains(int position) {
+        return positions.get(position);
+    }
+
+    public void clear() {
+        positions.clear();
+    }
+}
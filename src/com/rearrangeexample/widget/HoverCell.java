@@ -0,0 +1,138 @@
+package com.rearrangeexample.widget;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.view.View;
+import android.widget.Adapter;
+import com.nineoldandroids.view.ViewHelper;
+
+/**
+ * Cell which is drawn over the list while a row is being moved.
+ * Initial and final coordinates of the cell are kept by its HoverPath, which interpolates current bounds
+ * between them without allocating anything per frame. The cell is drawn either from a snapshot drawable,
+ * from a detached row view translated to the current bounds,
+ * or by the list overlay from a hardware layer which is only translated
+ */
+class HoverCell {
+    final Drawable drawable;
+    //bitmap the drawable is backed by, it goes back to the pool when the cell is dropped
+    final Bitmap snapshot;
+    //row view which is drawn directly or by the overlay when there is no snapshot
+    final View view;
+    //view is laid out at initial bounds in the overlay and moved by translation of its layer
+    final boolean layered;
+    final HoverPath path = new HoverPath();
+    //current bounds of the path, drawable and dirty region need them as a Rect
+    final Rect currentBounds = new Rect();
+    //adapter position the cell is moving to, it is used to find the cell when a new order arrives
+    int position;
+    //adapter view type of the row view, it is used to give the view back to the scrap pool
+    int viewType = Adapter.IGNORE_ITEM_VIEW_TYPE;
+    private int currentAlpha = 255;
+
+    HoverCell(Drawable drawable, Bitmap snapshot, Rect initialBounds, Rect endBounds) {
+        this.drawable = drawable;
+        this.snapshot = snapshot;
+        this.view = null;
+        this.layered = false;
+        path.setStart(initialBounds.left, initialBounds.top, initialBounds.right, initialBounds.bottom);
+        setEndBounds(endBounds);
+    }
+
+    HoverCell(View view, boolean layered, Rect initialBounds, Rect endBounds) {
+        this.drawable = null;
+        this.snapshot = null;
+        this.view = view;
+        this.layered = layered;
+        path.setStart(initialBounds.left, initialBounds.top, initialBounds.right, initialBounds.bottom);
+        setEndBounds(endBounds);
+    }
+
+    /**
+     * fade cell while it moves
+     * @param startAlpha alpha at the start of animation, 0..255
+     * @param endAlpha alpha at the end of animation, 0..255
+     */
+    void setAlphaRange(int startAlpha, int endAlpha) {
+        path.setAlphaRange(startAlpha, endAlpha);
+    }
+
+    /**
+     * @param endBounds new end of the path, e.g. when the cell is retargeted
+     */
+    void setEndBounds(Rect endBounds) {
+        path.setEnd(endBounds.left, endBounds.top, endBounds.right, endBounds.bottom);
+    }
+
+    int getEndHeight() {
+        return path.getEndBottom() - path.getEndTop();
+    }
+
+    /**
+     * move cell to the point of animation
+     * @param fraction animation fraction, 0 is initial bounds and 1 is end bounds
+     */
+    void setFraction(float fraction) {
+        path.setFraction(fraction);
+        currentBounds.set(path.getLeft(), path.getTop(), path.getRight(), path.getBottom());
+        int alpha = path.getAlpha();
+        if (drawable != null) {
+            drawable.setBounds(currentBounds);
+            if (alpha != currentAlpha) drawable.setAlpha(alpha);
+        }
+        else if (layered) {
+            ViewHelper.setTranslationX(view, path.getLeft() - path.getStartLeft());
+            ViewHelper.setTranslationY(view, path.getTop() - path.getStartTop());
+            if (alpha != currentAlpha) ViewHelper.setAlpha(view, alpha / 255f);
+        }
+        currentAlpha = alpha;
+    }
+
+    /**
+     * start a new animation from the current bounds, so the cell can be retargeted without a jump
+     */
+    void freeze() {
+        path.freeze();
+        if (layered) {
+            view.offsetLeftAndRight(path.getStartLeft() - view.getLeft());
+            view.offsetTopAndBottom(path.getStartTop() - view.getTop());
+            ViewHelper.setTranslationX(view, 0);
+            ViewHelper.setTranslationY(view, 0);
+        }
+    }
+
+    /**
+     * move the whole path of the cell vertically, e.g. when the list is scrolled
+     * @param dy offset in pixels
+     */
+    void offset(int dy) {
+        path.offset(dy);
+        currentBounds.offset(0, dy);
+        if (drawable != null) {
+            drawable.setBounds(currentBounds);
+        }
+        else if (layered) {
+            view.offsetTopAndBottom(dy);
+        }
+    }
+
+    /**
+     * draw cell at its current bounds
+     * @param canvas canvas of the list
+     */
+    void draw(Canvas canvas) {
+        if (drawable != null) {
+            drawable.draw(canvas);
+        }
+        else if (!layered) {
+            int saveCount = currentAlpha == 255 ? canvas.save() :
+                    canvas.saveLayerAlpha(currentBounds.left, currentBounds.top, currentBounds.right, currentBounds.bottom,
+                            currentAlpha, Canvas.ALL_SAVE_FLAG);
+            canvas.translate(currentBounds.left, currentBounds.top);
+            view.draw(canvas);
+            canvas.restoreToCount(saveCount);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.rearrangeexample.widget;
+
+/**
+ * Path of a hover cell from its initial bounds to its end bounds with an alpha range, kept in plain ints,
+ * so it doesn't depend on Android classes. Moving along the path doesn't allocate anything
+ */
+public class HoverPath {
+
+    private int startLeft;
+    private int startTop;
+    private int startRight;
+    private int startBottom;
+    private int endLeft;
+    private int endTop;
+    private int endRight;
+    private int endBottom;
+    private int left;
+    private int top;
+    private int right;
+    private int bottom;
+    private int startAlpha = 255;
+    private int endAlpha = 255;
+    private int alpha = 255;
+
+    public void setStart(int left, int top, int right, int bottom) {
+        startLeft = left;
+        startTop = top;
+        startRight = right;
+        startBottom = bottom;
+    }
+
+    public void setEnd(int left, int top, int right, int bottom) {
+        endLeft = left;
+        endTop = top;
+        endRight = right;
+        endBottom = bottom;
+    }
+
+    /**
+     * @param startAlpha alpha at the start of the path, 0..255
+     * @param endAlpha alpha at the end of the path, 0..255
+     */
+    public void setAlphaRange(int startAlpha, int endAlpha) {
+        this.startAlpha = startAlpha;
+        this.endAlpha = endAlpha;
+    }
+
+    /**
+     * move to the point of the path
+     * @param fraction 0 is the start and 1 is the end
+     */
+    public void setFraction(float fraction) {
+        left = interpolate(startLeft, endLeft, fraction);
+        top = interpolate(startTop, endTop, fraction);
+        right = interpolate(startRight, endRight, fraction);
+        bottom = interpolate(startBottom, endBottom, fraction);
+        alpha = interpolate(startAlpha, endAlpha, fraction);
+    }
+
+    /**
+     * start a new path from the current point
+     */
+    public void freeze() {
+        setStart(left, top, right, bottom);
+        startAlpha = alpha;
+    }
+
+    /**
+     * move the whole path vertically
+     * @param dy offset in pixels
+     */
+    public void offset(int dy) {
+        startTop += dy;
+        startBottom += dy;
+        endTop += dy;
+        endBottom += dy;
+        top += dy;
+        bottom += dy;
+    }
+
+    public int getLeft() {
+        return left;
+    }
+
+    public int getTop() {
+        return top;
+    }
+
+    public int getRight() {
+        return right;
+    }
+
+    public int getBottom() {
+        return bottom;
+    }
+
+    public int getAlpha() {
+        return alpha;
+    }
+
+    public int getStartLeft() {
+        return startLeft;
+    }
+
+    public int getStartTop() {
+        return startTop;
+    }
+
+    public int getStartRight() {
+        return startRight;
+    }
+
+    public int getEndLeft() {
+        return endLeft;
+    }
+
+    public int getEndTop() {
+        return endTop;
+    }
+
+    public int getEndRight() {
+        return endRight;
+    }
+
+    public int getEndBottom() {
+        return endBottom;
+    }
+
+    public static int interpolate(int start, int end, float fraction) {
+        return (int) (start + fraction * (end - start));
+    }
+}
@@ -0,0 +1,143 @@
+package com.rearrangeexample.widget;
+
+/**
+ * Cached order of item ids which children show, and a buffer for the next order read from the adapter.
+ * Read order replaces the cached one when it is committed, until then the cached order is older than the adapter
+ */
+public class IdOrder {
+
+    private long[] ids = new long[0];
+    private int start = 0;
+    private int count = 0;
+
+    private long[] readIds = new long[0];
+    private int readStart = 0;
+    private int readCount = 0;
+    //order was read and not committed yet, cached one doesn't follow the adapter
+    private boolean readPending = false;
+
+    /**
+     * read ids of a range of positions, cached order stays until the read one is committed
+     * @param source ids
+     * @param start first position
+     * @param count number of positions
+     */
+    public void read(MovementDiff.IdSource source, int start, int count) {
+        readIds = MovementDiff.readIds(source, start, count, readIds);
+        readStart = start;
+        readCount = count;
+        readPending = true;
+    }
+
+    /**
+     * make the last read order the cached one, old buffer is reused for the next read
+     */
+    public void commit() {
+        long[] buffer = ids;
+        ids = readIds;
+        start = readStart;
+        count = readCount;
+        readIds = buffer;
+        readStart = 0;
+        readCount = 0;
+        readPending = false;
+    }
+
+    /**
+     * read a range of positions and make it the cached order
+     * @param source ids
+     * @param start first position
+     * @param count number of positions
+     */
+    public void cache(MovementDiff.IdSource source, int start, int count) {
+        read(source, start, count);
+        commit();
+    }
+
+    /**
+     * leave the read buffer to a diff which may still read it, the next read goes to a fresh buffer.
+     * Read order is lost, cached one stays older than the adapter until the next commit
+     */
+    public void releaseReadBuffer() {
+        readIds = new long[0];
+        readCount = 0;
+    }
+
+    /**
+     * apply a permutation of all positions to the cached order
+     * @param newIndexOfOld new position of every item, indexed by its old position
+     * @return false if the cached order isn't the whole current list, e.g. a read order isn't committed,
+     * the order should be read again then
+     */
+    public boolean permute(int[] newIndexOfOld) {
+        int total = newIndexOfOld.length;
+        if (readPending || start != 0 || count != total) return false;
+        if (readIds.length < total) readIds = new long[total + (total >> 1)];
+        for (int i = 0; i < total; i++) {
+            readIds[newIndexOfOld[i]] = ids[i];
+        }
+        readStart = 0;
+        readCount = total;
+        commit();
+        return true;
+    }
+
+    /**
+     * apply explicit changes to the cached order, only ids of inserted items are read
+     * @param changeLog changes since the cached order
+     * @param source ids in the order after the last change
+     * @return false if the cached order doesn't match the source after the changes,
+     * e.g. adapter was changed without notifying the wrapper, the order should be read again then
+     */
+    public boolean applyChanges(ItemChangeLog changeLog, MovementDiff.IdSource source) {
+        if (readPending || start != 0) return false;
+        int capacity = count + changeLog.getInsertedItems();
+        if (ids.length < capacity) {
+            long[] bigger = new long[capacity + (capacity >> 1)];
+            System.arraycopy(ids, 0, bigger, 0, count);
+            ids = bigger;
+        }
+        count = changeLog.applyTo(ids, count, source);
+        return count == source.getCount();
+    }
+
+    /**
+     * @return cached ids, valid from the buffer start to getCount()
+     */
+    public long[] getIds() {
+        return ids;
+    }
+
+    /**
+     * @return position of the first cached id
+     */
+    public int getStart() {
+        return start;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return last read ids, valid from the buffer start to getReadCount()
+     */
+    public long[] getReadIds() {
+        return readIds;
+    }
+
+    public int getReadStart() {
+        return readStart;
+    }
+
+    public int getReadCount() {
+        return readCount;
+    }
+
+    /**
+     * @return true if an order was read and not committed, cached order may be older than the adapter
+     */
+    public boolean isReadPending() {
+        return readPending;
+    }
+}
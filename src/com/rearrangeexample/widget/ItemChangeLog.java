@@ -0,0 +1,265 @@
+package com.rearrangeexample.widget;
+
+/**
+ * Ordered list of explicit changes of adapter items: moves of item ranges, inserts and removals.
+ * Positions of every change are given in the order produced by all previous changes, like notifyItem* calls
+ * of RecyclerView. Any position can be mapped between the order before the first change and after the last one
+ * in O(number of changes) without reading item ids. When there are too many changes, or the whole data set
+ * changed, the log is marked as full and the list falls back to the full diff.
+ * Doesn't depend on Android classes
+ */
+public class ItemChangeLog {
+
+    public static final int DEFAULT_MAX_CHANGES = 64;
+
+    private static final int TYPE_MOVE = 0;
+    private static final int TYPE_INSERT = 1;
+    private static final int TYPE_REMOVE = 2;
+
+    private int[] types = new int[16];
+    private int[] positions = new int[16];
+    //new position of the first moved item, unused for inserts and removals
+    private int[] targets = new int[16];
+    private int[] counts = new int[16];
+    private int size = 0;
+
+    private int maxChanges = DEFAULT_MAX_CHANGES;
+    private boolean full = false;
+    private int insertedItems = 0;
+    private int removedItems = 0;
+
+    //buffer for the moved range of ids
+    private long[] movedIds = new long[0];
+
+    /**
+     * items [from, from + count) were moved, so the first of them is at position to afterwards
+     * @param from position of the first moved item before the move
+     * @param to position of the first moved item after the move
+     * @param count number of moved items
+     */
+    public void addMove(int from, int to, int count) {
+        if (from == to || count == 0) return;
+        add(TYPE_MOVE, from, to, count);
+    }
+
+    /**
+     * @param position position of the first inserted item
+     * @param count number of inserted items
+     */
+    public void addInsert(int position, int count) {
+        if (count == 0) return;
+        add(TYPE_INSERT, position, 0, count);
+        insertedItems += count;
+    }
+
+    /**
+     * @param position position of the first removed item
+     * @param count number of removed items
+     */
+    public void addRemove(int position, int count) {
+        if (count == 0) return;
+        add(TYPE_REMOVE, position, 0, count);
+        removedItems += count;
+    }
+
+    /**
+     * the whole data set changed, logged changes can't describe it anymore
+     */
+    public void invalidate() {
+        full = true;
+        size = 0;
+    }
+
+    /**
+     * @return true if there are logged changes and they describe all changes since the last clear()
+     */
+    public boolean isIncremental() {
+        return !full && size > 0;
+    }
+
+    /**
+     * @return true if nothing was logged or invalidated since the last clear()
+     */
+    public boolean isEmpty() {
+        return !full && size == 0;
+    }
+
+    /**
+     * @return number of logged changes
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return number of items inserted by logged changes, items may be removed by later changes
+     */
+    public int getInsertedItems() {
+        return insertedItems;
+    }
+
+    /**
+     * @return difference between item counts after and before logged changes
+     */
+    public int getCountDelta() {
+        return insertedItems - removedItems;
+    }
+
+    /**
+     * @param maxChanges max number of logged changes, log is marked as full when there are more of them
+     */
+    public void setMaxChanges(int maxChanges) {
+        this.maxChanges = maxChanges;
+    }
+
+    /**
+     * start a new log
+     */
+    public void clear() {
+        size = 0;
+        full = false;
+        insertedItems = 0;
+        removedItems = 0;
+    }
+
+    /**
+     * @param position position before the first change
+     * @return position after the last change or MovementDiff.POSITION_NONE if the item was removed
+     */
+    public int mapForward(int position) {
+        return mapForward(position, 0);
+    }
+
+    /**
+     * @param position position after the last change
+     * @return position before the first change or MovementDiff.POSITION_NONE if the item was inserted
+     */
+    public int mapBackward(int position) {
+        for (int i = size - 1; i >= 0 && position != MovementDiff.POSITION_NONE; i--) {
+            int start = positions[i];
+            int count = counts[i];
+            switch (types[i]) {
+                case TYPE_INSERT:
+                    if (position >= start + count) position -= count;
+                    else if (position >= start) position = MovementDiff.POSITION_NONE;
+                    break;
+                case TYPE_REMOVE:
+                    if (position >= start) position += count;
+                    break;
+                default:
+                    int target = targets[i];
+                    if (position >= target && position < target + count) {
+                        position = start + position - target;
+                    }
+                    else {
+                        if (position >= target + count) position -= count;
+                        if (position >= start) position += count;
+                    }
+                    break;
+            }
+        }
+        return position;
+    }
+
+    /**
+     * @param position position before the first change
+     * @return true if the item was in a moved range, not only shifted by other changes
+     */
+    public boolean isMoved(int position) {
+        for (int i = 0; i < size && position != MovementDiff.POSITION_NONE; i++) {
+            if (types[i] == TYPE_MOVE && position >= positions[i] && position < positions[i] + counts[i]) return true;
+            position = mapChange(i, position);
+        }
+        return false;
+    }
+
+    /**
+     * apply logged changes to a cached order of ids, ids of inserted items are read from source
+     * @param ids cached ids, its length must be at least count + getInsertedItems()
+     * @param count number of valid entries in ids
+     * @param source source of ids in the order after the last change
+     * @return number of valid entries after the changes
+     */
+    public int applyTo(long[] ids, int count, MovementDiff.IdSource source) {
+        for (int i = 0; i < size; i++) {
+            int start = positions[i];
+            int changed = counts[i];
+            switch (types[i]) {
+                case TYPE_INSERT:
+                    System.arraycopy(ids, start, ids, start + changed, count - start);
+                    count += changed;
+                    break;
+                case TYPE_REMOVE:
+                    System.arraycopy(ids, start + changed, ids, start, count - start - changed);
+                    count -= changed;
+                    break;
+                default:
+                    if (movedIds.length < changed) movedIds = new long[changed];
+                    System.arraycopy(ids, start, movedIds, 0, changed);
+                    System.arraycopy(ids, start + changed, ids, start, count - start - changed);
+                    int target = targets[i];
+                    System.arraycopy(ids, target, ids, target + changed, count - changed - target);
+                    System.arraycopy(movedIds, 0, ids, target, changed);
+                    break;
+            }
+        }
+        //inserted items may be moved or removed by later changes
+        for (int i = 0; i < size; i++) {
+            if (types[i] != TYPE_INSERT) continue;
+            for (int j = 0; j < counts[i]; j++) {
+                int position = mapForward(positions[i] + j, i + 1);
+                if (position != MovementDiff.POSITION_NONE) ids[position] = source.getItemId(position);
+            }
+        }
+        return count;
+    }
+
+    private int mapForward(int position, int firstChange) {
+        for (int i = firstChange; i < size && position != MovementDiff.POSITION_NONE; i++) {
+            position = mapChange(i, position);
+        }
+        return position;
+    }
+
+    private int mapChange(int index, int position) {
+        int start = positions[index];
+        int count = counts[index];
+        switch (types[index]) {
+            case TYPE_INSERT:
+                return position >= start ? position + count : position;
+            case TYPE_REMOVE:
+                if (position >= start + count) return position - count;
+                return position >= start ? MovementDiff.POSITION_NONE : position;
+            default:
+                int target = targets[index];
+                if (position >= start && position < start + count) return target + position - start;
+                if (position >= start + count) position -= count;
+                return position >= target ? position + count : position;
+        }
+    }
+
+    private void add(int type, int position, int target, int count) {
+        if (full) return;
+        if (size == maxChanges) {
+            invalidate();
+            return;
+        }
+        if (size == types.length) {
+            types = grow(types);
+            positions = grow(positions);
+            targets = grow(targets);
+            counts = grow(counts);
+        }
+        types[size] = type;
+        positions[size] = position;
+        targets[size] = target;
+        counts[size] = count;
+        size++;
+    }
+
+    private static int[] grow(int[] array) {
+        int[] bigger = new int[array.length * 2];
+        System.arraycopy(array, 0, bigger, 0, array.length);
+        return bigger;
+    }
+}
@@ -0,0 +1,163 @@
+package com.rearrangeexample.widget;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash index from primitive long keys (item IDs) to int values (positions).
+ * Keeps no boxed objects and can be reused between updates without reallocation
+ */
+public class LongIntIndex {
+
+    private static final int MIN_CAPACITY = 16;
+    //table this many times bigger than needed is dropped on reset, so clearing doesn't cost the peak size forever
+    private static final int SHRINK_RATIO = 8;
+
+    private long[] keys = new long[MIN_CAPACITY];
+    //stored value + 1, so 0 marks an empty slot
+    private int[] values = new int[MIN_CAPACITY];
+    private int mask = MIN_CAPACITY - 1;
+    private int size = 0;
+
+    /**
+     * clear the index and make sure it can hold expected number of keys without growing,
+     * a table left much bigger by an earlier peak is replaced with a smaller one
+     * @param expectedSize number of keys which will be put
+     */
+    public void reset(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        //keep load factor at or below 0.5
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        if (capacity > keys.length || keys.length >= capacity * SHRINK_RATIO) {
+            keys = new long[capacity];
+            values = new int[capacity];
+        }
+        else if (size > 0) {
+            //empty table has nothing to clear
+            Arrays.fill(values, 0);
+        }
+        mask = keys.length - 1;
+        size = 0;
+    }
+
+    /**
+     * put a key if it is not in the index yet, the first value wins
+     * @param key item id
+     * @param value position, must be non-negative
+     */
+    public void putIfAbsent(long key, int value) {
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+        }
+        int slot = slot(key);
+        while (values[slot] != 0) {
+            if (keys[slot] == key) return;
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value + 1;
+        size++;
+    }
+
+    /**
+     * put a key or replace its value
+     * @param key item id
+     * @param value position, must be non-negative
+     */
+    public void put(long key, int value) {
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+        }
+        int slot = slot(key);
+        while (values[slot] != 0) {
+            if (keys[slot] == key) {
+                values[slot] = value + 1;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value + 1;
+        size++;
+    }
+
+    /**
+     * @param key item id
+     * @param missing value to return if key is absent
+     * @return value stored for the key or missing
+     */
+    public int get(long key, int missing) {
+        int slot = slot(key);
+        while (values[slot] != 0) {
+            if (keys[slot] == key) return values[slot] - 1;
+            slot = (slot + 1) & mask;
+        }
+        return missing;
+    }
+
+    /**
+     * remove a key if it is in the index
+     * @param key item id
+     */
+    public void remove(long key) {
+        int slot = slot(key);
+        while (values[slot] != 0) {
+            if (keys[slot] == key) {
+                closeHole(slot);
+                size--;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int slot(long key) {
+        //murmur3 finalizer, spreads sequential ids over the table
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key & mask;
+    }
+
+    /**
+     * shift keys of the probe run back into the removed slot, so lookups don't stop at a hole
+     */
+    private void closeHole(int hole) {
+        int next = (hole + 1) & mask;
+        while (values[next] != 0) {
+            //a key can't move to a hole which is before its home slot
+            int home = slot(keys[next]);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        values[hole] = 0;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldValues.length * 2];
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] == 0) continue;
+            int slot = slot(oldKeys[i]);
+            while (values[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+}
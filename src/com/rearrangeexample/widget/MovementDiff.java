@@ -0,0 +1,457 @@
+package com.rearrangeexample.widget;
+
+import java.util.Arrays;
+
+/**
+ * Computes which items changed their positions between two orders of item IDs.
+ * Result is stored in parallel primitive arrays: item from position getFrom(i) moves to position getTo(i).
+ * Items which are absent in the old order have POSITION_NONE as their old position.
+ * Inserted and removed positions are reported separately as well.
+ * With STRATEGY_MINIMAL_MOVES only items outside of the longest increasing subsequence of old positions are moves,
+ * other items which changed their index are reported as shifts.
+ * Works in O(n), O(n log n) for minimal moves, and doesn't depend on Android classes
+ */
+public class MovementDiff {
+
+    public static final int POSITION_NONE = -1;
+    /**
+     * old position of an item which entered a window starting at position 0 from above,
+     * it is before any real position but isn't POSITION_NONE, so the item is not taken for an inserted one
+     */
+    public static final int POSITION_ABOVE = -2;
+
+    /**
+     * every item which changed its index is a move, inserted items are moves from POSITION_NONE
+     */
+    public static final int STRATEGY_ALL_CHANGED = 0;
+    /**
+     * least number of moves, items which only shifted because of other moves, inserts or removals are shifts,
+     * inserted items are not moves
+     */
+    public static final int STRATEGY_MINIMAL_MOVES = 1;
+
+    /**
+     * Source of item ids for the positions which are not cached
+     */
+    public interface IdSource {
+        int getCount();
+
+        long getItemId(int position);
+    }
+
+    /**
+     * read ids of a range of positions into the buffer from its start
+     * @param source ids
+     * @param start first position
+     * @param count number of positions
+     * @param buffer buffer to fill, a bigger one is allocated if it is too small
+     * @return filled buffer
+     */
+    public static long[] readIds(IdSource source, int start, int count, long[] buffer) {
+        //headroom, so growing data sets don't reallocate the snapshot on every change
+        if (buffer.length < count) buffer = new long[count + (count >> 1)];
+        for (int i = 0; i < count; i++) {
+            buffer[i] = source.getItemId(start + i);
+        }
+        return buffer;
+    }
+
+    private final LongIntIndex oldPositions = new LongIntIndex();
+    private final LongIntIndex newPositions = new LongIntIndex();
+    private final LongIntIndex leavingIds = new LongIntIndex();
+
+    private int strategy = STRATEGY_ALL_CHANGED;
+
+    private int[] from = new int[16];
+    private int[] to = new int[16];
+    private int size = 0;
+
+    private int[] shiftFrom = new int[16];
+    private int[] shiftTo = new int[16];
+    private int shiftCount = 0;
+
+    private int[] inserted = new int[16];
+    private int insertedCount = 0;
+    private int[] removed = new int[16];
+    private int removedCount = 0;
+
+    //buffers reused between computations
+    private boolean[] matched = new boolean[0];
+    private int[] sequence = new int[0];
+    private int[] tails = new int[0];
+    private int[] predecessors = new int[0];
+    private boolean[] stable = new boolean[0];
+
+    /**
+     * @param strategy STRATEGY_ALL_CHANGED or STRATEGY_MINIMAL_MOVES, used by compute()
+     */
+    public void setStrategy(int strategy) {
+        if (strategy != STRATEGY_ALL_CHANGED && strategy != STRATEGY_MINIMAL_MOVES) {
+            throw new IllegalArgumentException("Unknown strategy " + strategy);
+        }
+        this.strategy = strategy;
+    }
+
+    public int getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * compare two orders of ids
+     * @param oldIds ids in the old order
+     * @param oldCount number of valid entries in oldIds
+     * @param newIds ids in the new order
+     * @param newCount number of valid entries in newIds
+     */
+    public void compute(long[] oldIds, int oldCount, long[] newIds, int newCount) {
+        oldPositions.reset(oldCount);
+        for (int i = 0; i < oldCount; i++) {
+            oldPositions.putIfAbsent(oldIds[i], i);
+        }
+        clear();
+        if (matched.length < oldCount) matched = new boolean[oldCount];
+        else Arrays.fill(matched, 0, oldCount, false);
+
+        if (strategy == STRATEGY_MINIMAL_MOVES) {
+            computeMinimalMoves(newIds, newCount);
+        }
+        else {
+            for (int i = 0; i < newCount; i++) {
+                int foundPos = oldPositions.get(newIds[i], POSITION_NONE);
+                if (foundPos == POSITION_NONE) addInserted(i);
+                else matched[foundPos] = true;
+                if (i != foundPos) add(foundPos, i);
+            }
+        }
+
+        for (int i = 0; i < oldCount; i++) {
+            if (!matched[i]) addRemoved(i);
+        }
+    }
+
+    /**
+     * split common items into stable ones, which form the longest increasing subsequence of old positions,
+     * and moved ones
+     */
+    private void computeMinimalMoves(long[] newIds, int newCount) {
+        ensureSequenceCapacity(newCount);
+        for (int i = 0; i < newCount; i++) {
+            int foundPos = oldPositions.get(newIds[i], POSITION_NONE);
+            sequence[i] = foundPos;
+            if (foundPos == POSITION_NONE) addInserted(i);
+            else matched[foundPos] = true;
+        }
+        addMinimalMoves(newCount);
+    }
+
+    /**
+     * compute movements of a permutation, nothing is looked up by id. Permutation is validated in the same pass
+     * @param newIndexOfOld new position of every item, indexed by its old position
+     * @param count number of items
+     * @throws IllegalArgumentException if the array is not a permutation of 0..count-1
+     */
+    public void computePermutation(int[] newIndexOfOld, int count) {
+        clear();
+        if (matched.length < count) matched = new boolean[count];
+        else Arrays.fill(matched, 0, count, false);
+        boolean minimalMoves = strategy == STRATEGY_MINIMAL_MOVES;
+        if (minimalMoves) ensureSequenceCapacity(count);
+        for (int i = 0; i < count; i++) {
+            int newPosition = newIndexOfOld[i];
+            if (newPosition < 0 || newPosition >= count || matched[newPosition]) {
+                clear();
+                throw new IllegalArgumentException("Not a permutation, new index " + newPosition + " of " + i);
+            }
+            matched[newPosition] = true;
+            if (minimalMoves) sequence[newPosition] = i;
+            else if (newPosition != i) add(i, newPosition);
+        }
+        if (minimalMoves) addMinimalMoves(count);
+    }
+
+    private void ensureSequenceCapacity(int count) {
+        if (sequence.length < count) {
+            sequence = new int[count];
+            tails = new int[count];
+            predecessors = new int[count];
+            stable = new boolean[count];
+        }
+    }
+
+    /**
+     * @param newCount number of entries in sequence, old positions of items in the new order
+     */
+    private void addMinimalMoves(int newCount) {
+        int length = 0;
+        for (int i = 0; i < newCount; i++) {
+            int foundPos = sequence[i];
+            stable[i] = false;
+            if (foundPos == POSITION_NONE) continue;
+            //binary search of the first tail which isn't less than current old position
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (sequence[tails[middle]] < foundPos) low = middle + 1;
+                else high = middle;
+            }
+            predecessors[i] = low > 0 ? tails[low - 1] : POSITION_NONE;
+            tails[low] = i;
+            if (low == length) length++;
+        }
+        for (int i = length > 0 ? tails[length - 1] : POSITION_NONE; i != POSITION_NONE; i = predecessors[i]) {
+            stable[i] = true;
+        }
+        for (int i = 0; i < newCount; i++) {
+            int foundPos = sequence[i];
+            if (foundPos == POSITION_NONE || foundPos == i) continue;
+            if (stable[i]) addShift(foundPos, i);
+            else add(foundPos, i);
+        }
+    }
+
+    /**
+     * compare two windows of the orders, ids outside of the windows are not read unless
+     * an item left the window. Such items are searched in the new order not further than searchDistance
+     * positions from the window, items which are not found are left out of the result.
+     * Items which entered the window from unknown positions come from the nearest edge of the old window,
+     * from POSITION_ABOVE if the old window starts at position 0
+     * @param oldIds ids of the old window
+     * @param oldStart position of the first item of the old window
+     * @param oldCount number of items in the old window
+     * @param newIds ids of the new window
+     * @param newStart position of the first item of the new window
+     * @param newCount number of items in the new window
+     * @param source source of ids in the new order outside of the new window
+     * @param searchDistance max distance from the new window to search for items which left it
+     */
+    public void computeWindow(long[] oldIds, int oldStart, int oldCount,
+                              long[] newIds, int newStart, int newCount,
+                              IdSource source, int searchDistance) {
+        oldPositions.reset(oldCount);
+        for (int i = 0; i < oldCount; i++) {
+            oldPositions.putIfAbsent(oldIds[i], oldStart + i);
+        }
+        newPositions.reset(newCount);
+        for (int i = 0; i < newCount; i++) {
+            newPositions.putIfAbsent(newIds[i], newStart + i);
+        }
+        clear();
+
+        int oldEnd = oldStart + oldCount - 1;
+        int newMiddle = newStart + newCount / 2;
+        for (int i = 0; i < newCount; i++) {
+            int position = newStart + i;
+            int foundPos = oldPositions.get(newIds[i], POSITION_NONE);
+            if (foundPos == POSITION_NONE) {
+                //came from outside of the old window
+                foundPos = position >= newMiddle ? oldEnd + 1 : oldStart > 0 ? oldStart - 1 : POSITION_ABOVE;
+            }
+            if (position != foundPos) add(foundPos, position);
+        }
+
+        leavingIds.reset(0);
+        for (int i = 0; i < oldCount; i++) {
+            if (newPositions.get(oldIds[i], POSITION_NONE) == POSITION_NONE) {
+                leavingIds.putIfAbsent(oldIds[i], oldStart + i);
+            }
+        }
+        int remaining = leavingIds.size();
+        int count = source.getCount();
+        for (int distance = 1; remaining > 0 && distance <= searchDistance; distance++) {
+            int above = newStart - distance;
+            int below = newStart + newCount - 1 + distance;
+            if (above < 0 && below >= count) break;
+            if (above >= 0) remaining -= addLeaving(source.getItemId(above), above);
+            if (below < count && remaining > 0) remaining -= addLeaving(source.getItemId(below), below);
+        }
+    }
+
+    /**
+     * compute movements of explicitly logged changes for windows of the orders, ids are not read at all.
+     * Items which left the old window and items which entered the new window are followed to their positions,
+     * items which were in a moved range are moves and others are shifts, unless the strategy is STRATEGY_ALL_CHANGED
+     * @param log changes between the old and the new order
+     * @param oldStart position of the first item of the old window
+     * @param oldCount number of items in the old window
+     * @param newStart position of the first item of the new window
+     * @param newCount number of items in the new window
+     */
+    public void computeChanges(ItemChangeLog log, int oldStart, int oldCount, int newStart, int newCount) {
+        clear();
+        int oldEnd = oldStart + oldCount;
+        for (int position = oldStart; position < oldEnd; position++) {
+            int newPosition = log.mapForward(position);
+            if (newPosition == POSITION_NONE) addRemoved(position);
+            else if (newPosition != position) addChange(log, position, newPosition);
+        }
+        for (int i = 0; i < newCount; i++) {
+            int position = newStart + i;
+            int oldPosition = log.mapBackward(position);
+            if (oldPosition == POSITION_NONE) {
+                addInserted(position);
+                if (strategy == STRATEGY_ALL_CHANGED) add(POSITION_NONE, position);
+            }
+            //items from the old window are already added
+            else if (oldPosition != position && (oldPosition < oldStart || oldPosition >= oldEnd)) {
+                addChange(log, oldPosition, position);
+            }
+        }
+    }
+
+    /**
+     * @return number of moved items
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index index of movement
+     * @return old position of moved item
+     */
+    public int getFrom(int index) {
+        return from[index];
+    }
+
+    /**
+     * @param index index of movement
+     * @return new position of moved item
+     */
+    public int getTo(int index) {
+        return to[index];
+    }
+
+    /**
+     * @return number of items which changed index only because of other moves, inserts or removals
+     */
+    public int getShiftCount() {
+        return shiftCount;
+    }
+
+    /**
+     * @param index index of shift
+     * @return old position of shifted item
+     */
+    public int getShiftFrom(int index) {
+        return shiftFrom[index];
+    }
+
+    /**
+     * @param index index of shift
+     * @return new position of shifted item
+     */
+    public int getShiftTo(int index) {
+        return shiftTo[index];
+    }
+
+    /**
+     * @return number of items which are absent in the old order
+     */
+    public int getInsertedCount() {
+        return insertedCount;
+    }
+
+    /**
+     * @param index index of insert
+     * @return new position of inserted item
+     */
+    public int getInserted(int index) {
+        return inserted[index];
+    }
+
+    /**
+     * @return number of items which are absent in the new order
+     */
+    public int getRemovedCount() {
+        return removedCount;
+    }
+
+    /**
+     * @param index index of removal
+     * @return old position of removed item
+     */
+    public int getRemoved(int index) {
+        return removed[index];
+    }
+
+    /**
+     * @return new diff holding only a copy of computed result, so this one can be reused
+     */
+    public MovementDiff copyMovements() {
+        MovementDiff copy = new MovementDiff();
+        copy.strategy = strategy;
+        copy.from = copyOf(from, size);
+        copy.to = copyOf(to, size);
+        copy.size = size;
+        copy.shiftFrom = copyOf(shiftFrom, shiftCount);
+        copy.shiftTo = copyOf(shiftTo, shiftCount);
+        copy.shiftCount = shiftCount;
+        copy.inserted = copyOf(inserted, insertedCount);
+        copy.insertedCount = insertedCount;
+        copy.removed = copyOf(removed, removedCount);
+        copy.removedCount = removedCount;
+        return copy;
+    }
+
+    /**
+     * drop computed result
+     */
+    public void clear() {
+        size = 0;
+        shiftCount = 0;
+        insertedCount = 0;
+        removedCount = 0;
+    }
+
+    private int addLeaving(long id, int position) {
+        int foundPos = leavingIds.get(id, POSITION_NONE);
+        if (foundPos == POSITION_NONE) return 0;
+        add(foundPos, position);
+        return 1;
+    }
+
+    private void addChange(ItemChangeLog log, int fromPosition, int toPosition) {
+        if (strategy == STRATEGY_MINIMAL_MOVES && !log.isMoved(fromPosition)) addShift(fromPosition, toPosition);
+        else add(fromPosition, toPosition);
+    }
+
+    private void add(int fromPosition, int toPosition) {
+        from = ensureCapacity(from, size);
+        to = ensureCapacity(to, size);
+        from[size] = fromPosition;
+        to[size] = toPosition;
+        size++;
+    }
+
+    private void addShift(int fromPosition, int toPosition) {
+        shiftFrom = ensureCapacity(shiftFrom, shiftCount);
+        shiftTo = ensureCapacity(shiftTo, shiftCount);
+        shiftFrom[shiftCount] = fromPosition;
+        shiftTo[shiftCount] = toPosition;
+        shiftCount++;
+    }
+
+    private void addInserted(int position) {
+        inserted = ensureCapacity(inserted, insertedCount);
+        inserted[insertedCount++] = position;
+    }
+
+    private void addRemoved(int position) {
+        removed = ensureCapacity(removed, removedCount);
+        removed[removedCount++] = position;
+    }
+
+    private static int[] ensureCapacity(int[] array, int size) {
+        if (size < array.length) return array;
+        int[] bigger = new int[Math.max(16, array.length * 2)];
+        System.arraycopy(array, 0, bigger, 0, size);
+        return bigger;
+    }
+
+    private static int[] copyOf(int[] array, int size) {
+        int[] copy = new int[Math.max(size, 1)];
+        System.arraycopy(array, 0, copy, 0, size);
+        return copy;
+    }
+}
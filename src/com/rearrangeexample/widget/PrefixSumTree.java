@@ -0,0 +1,88 @@
+package com.rearrangeexample.widget;
+
+/**
+ * Fenwick tree of int values, gives sums of the first n values and updates single values in O(log n).
+ * Used to find offsets of rows with different heights
+ */
+public class PrefixSumTree {
+
+    private int[] values = new int[16];
+    private int[] tree = new int[17];
+    private int size = 0;
+
+    /**
+     * fill the tree with values in O(n)
+     * @param source values
+     * @param count number of values to take from source
+     */
+    public void build(int[] source, int count) {
+        if (values.length < count) {
+            values = new int[count];
+            tree = new int[count + 1];
+        }
+        size = count;
+        System.arraycopy(source, 0, values, 0, count);
+        tree[0] = 0;
+        for (int i = 1; i <= count; i++) {
+            tree[i] = values[i - 1];
+        }
+        for (int i = 1; i <= count; i++) {
+            int parent = i + (i & -i);
+            if (parent <= count) tree[parent] += tree[i];
+        }
+    }
+
+    /**
+     * @param index index of value
+     * @param value new value
+     */
+    public void set(int index, int value) {
+        int delta = value - values[index];
+        values[index] = value;
+        for (int i = index + 1; i <= size; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * @param index index of value
+     * @return value at index
+     */
+    public int get(int index) {
+        return values[index];
+    }
+
+    /**
+     * @param count number of values to sum, values above size are not counted
+     * @return sum of the first count values
+     */
+    public int prefixSum(int count) {
+        int sum = 0;
+        for (int i = Math.min(count, size); i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    /**
+     * find the value whose range contains given sum in O(log n), values must not be negative
+     * @param sum sum to look for
+     * @return index of the first value for which prefixSum(index + 1) is greater than sum, size if there is none
+     */
+    public int indexOf(int sum) {
+        int index = 0;
+        int step = Integer.highestOneBit(Math.max(size, 1));
+        for (; step > 0; step >>= 1) {
+            int next = index + step;
+            if (next <= size && tree[next] <= sum) {
+                index = next;
+                sum -= tree[next];
+            }
+        }
+        return index;
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -5,24 +5,61 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.BaseAdapter;
 
-import java.util.ArrayList;
-import java.util.List;
-
 /**
  * @author V.Bolnykh
  * Adapter wrapper which delegates basic method calls to underlying adapter, hides views which are being moved,
  * and verifies that a new update of view's positions won't start until previous is finished
  */
-public class RearrangeAdapterWrapper extends BaseAdapter {
+public class RearrangeAdapterWrapper extends BaseAdapter implements MovementDiff.IdSource {
+
+    /**
+     * Adapter which tells versions of item contents, so snapshots prepared before a change of an item
+     * are not used after it. Without it snapshots are dropped only when their rows are bound again
+     */
+    public interface VersionedAdapter {
+        /**
+         * @param position adapter position
+         * @return version which changes whenever the item looks differently
+         */
+        long getItemVersion(int position);
+    }
+
+    /**
+     * Receiver of row binds, used by the list to drop snapshots of rebound rows
+     */
+    interface OnRowBoundListener {
+        void onRowBound(int position);
+    }
+
+    /**
+     * Receiver of updates before they reach observers, used by the list to diff while the old order is on screen
+     */
+    interface UpdateInterceptor {
+        /**
+         * @return true if the update is held, the interceptor dispatches it later with dispatchDataSetChanged()
+         */
+        boolean onUpdate();
+    }
 
     private BaseAdapter adapter;
 
-    private List<Integer> hiddenPositions = new ArrayList<Integer>();
-    private boolean movingViews = false;
-    private boolean updatePending = false;
+    //checked on every bind
+    private final HiddenPositions hiddenPositions = new HiddenPositions();
+    private UpdateScheduler updateScheduler;
+    //explicit changes since the last applied update
+    private final ItemChangeLog changeLog = new ItemChangeLog();
+    private OnRowBoundListener onRowBoundListener;
+    private UpdateInterceptor updateInterceptor;
 
     public RearrangeAdapterWrapper(BaseAdapter adapter) {
         this.adapter = adapter;
+        this.updateScheduler = new UpdateScheduler(new Runnable() {
+            @Override
+            public void run() {
+                if (updateInterceptor != null && updateInterceptor.onUpdate()) return;
+                RearrangeAdapterWrapper.this.adapter.notifyDataSetChanged();
+            }
+        });
     }
 
     @Override
@@ -40,22 +77,120 @@ public class RearrangeAdapterWrapper extends BaseAdapter {
         return adapter.getItemId(position);
     }
 
+    @Override
+    public int getItemViewType(int position) {
+        return adapter.getItemViewType(position);
+    }
+
+    @Override
+    public int getViewTypeCount() {
+        return adapter.getViewTypeCount();
+    }
+
     @Override
     public View getView(int position, View convertView, ViewGroup parent) {
         View v = adapter.getView(position, convertView, parent);
-        if (hiddenPositions.contains(position)) v.setVisibility(View.INVISIBLE);
+        if (onRowBoundListener != null) onRowBoundListener.onRowBound(position);
+        //recycled views may have been hidden for another position
+        v.setVisibility(hiddenPositions.contains(position) ? View.INVISIBLE : View.VISIBLE);
         return v;
     }
 
     /**
-     * prevent extra call of notifyDataSetChanged while views are moving
+     * prevent extra call of notifyDataSetChanged while views are moving,
+     * updates are coalesced by the update scheduler
      */
     @Override
     public void notifyDataSetChanged() {
-        if (movingViews) {
-            updatePending = true;
-        }
-        else adapter.notifyDataSetChanged();
+        changeLog.invalidate();
+        updateScheduler.requestUpdate();
+    }
+
+    /**
+     * @param position adapter position
+     * @return content version of the item, 0 if the wrapped adapter is not a VersionedAdapter
+     */
+    public long getItemVersion(int position) {
+        return adapter instanceof VersionedAdapter ? ((VersionedAdapter) adapter).getItemVersion(position) : 0;
+    }
+
+    void setOnRowBoundListener(OnRowBoundListener onRowBoundListener) {
+        this.onRowBoundListener = onRowBoundListener;
+    }
+
+    void setUpdateInterceptor(UpdateInterceptor updateInterceptor) {
+        this.updateInterceptor = updateInterceptor;
+    }
+
+    /**
+     * notify observers right away, bypassing the update scheduler, used when the list has already animated the change
+     */
+    void dispatchDataSetChanged() {
+        adapter.notifyDataSetChanged();
+    }
+
+    /**
+     * item was moved, so the list can animate it without comparing the whole order
+     * @param fromPosition position of the item before the move
+     * @param toPosition position of the item after the move
+     */
+    public void notifyItemMoved(int fromPosition, int toPosition) {
+        notifyItemRangeMoved(fromPosition, toPosition, 1);
+    }
+
+    /**
+     * range of items was moved, so the list can animate it without comparing the whole order
+     * @param fromPosition position of the first moved item before the move
+     * @param toPosition position of the first moved item after the move
+     * @param itemCount number of moved items
+     */
+    public void notifyItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+        checkRange(fromPosition, itemCount, getCount());
+        checkRange(toPosition, itemCount, getCount());
+        changeLog.addMove(fromPosition, toPosition, itemCount);
+        updateScheduler.requestUpdate();
+    }
+
+    /**
+     * @param position position of the inserted item
+     */
+    public void notifyItemInserted(int position) {
+        notifyItemRangeInserted(position, 1);
+    }
+
+    /**
+     * @param position position of the first inserted item
+     * @param itemCount number of inserted items
+     */
+    public void notifyItemRangeInserted(int position, int itemCount) {
+        checkRange(position, itemCount, getCount());
+        changeLog.addInsert(position, itemCount);
+        updateScheduler.requestUpdate();
+    }
+
+    /**
+     * @param position position the item had before removal
+     */
+    public void notifyItemRemoved(int position) {
+        notifyItemRangeRemoved(position, 1);
+    }
+
+    /**
+     * @param position position the first removed item had before removal
+     * @param itemCount number of removed items
+     */
+    public void notifyItemRangeRemoved(int position, int itemCount) {
+        //removed items were in the list, so the range is checked against the count before removal
+        checkRange(position, itemCount, getCount() + itemCount);
+        changeLog.addRemove(position, itemCount);
+        updateScheduler.requestUpdate();
+    }
+
+    /**
+     * @return explicit changes which weren't applied by the list yet
+     */
+    public ItemChangeLog getChangeLog() {
+        return changeLog;
     }
 
     @Override
@@ -81,6 +216,23 @@ public class RearrangeAdapterWrapper extends BaseAdapter {
         hiddenPositions.add(position);
     }
 
+    /**
+     * position numbers of a whole batch of moving views
+     * @param positions array of positions
+     * @param count number of valid entries in positions
+     */
+    public void addHiddenPositions(int[] positions, int count) {
+        hiddenPositions.addAll(positions, count);
+    }
+
+    /**
+     * @param position position number
+     * @return true if view at position is being moved and is hidden
+     */
+    public boolean isHiddenPosition(int position) {
+        return hiddenPositions.contains(position);
+    }
+
     /**
      * clear hidden positions list, so the will be drawn next time
      */
@@ -88,11 +240,44 @@ public class RearrangeAdapterWrapper extends BaseAdapter {
         hiddenPositions.clear();
     }
 
-    public void toggleUpdatingState() {
-        movingViews = !movingViews;
-        if (!movingViews && updatePending) {
-            updatePending = false;
-            notifyDataSetChanged();
+    /**
+     * @return scheduler which holds and coalesces updates, use it to set min interval, frame alignment and read metrics
+     */
+    public UpdateScheduler getUpdateScheduler() {
+        return updateScheduler;
+    }
+
+    /**
+     * views started moving, updates are held until they stop
+     */
+    public void onRearrangeStarted() {
+        updateScheduler.animationStarted();
+    }
+
+    /**
+     * views stopped moving, the latest held update is applied
+     */
+    public void onRearrangeFinished() {
+        updateScheduler.animationFinished();
+    }
+
+    /**
+     * diff of the last update is being computed in background, updates are held until it is applied
+     */
+    public void onDiffStarted() {
+        updateScheduler.diffStarted();
+    }
+
+    /**
+     * diff of the last update was applied or cancelled
+     */
+    public void onDiffFinished() {
+        updateScheduler.diffFinished();
+    }
+
+    private static void checkRange(int position, int itemCount, int count) {
+        if (position < 0 || itemCount < 0 || position + itemCount > count) {
+            throw new IndexOutOfBoundsException("Range " + position + ".." + (position + itemCount) + " is out of 0.." + count);
         }
     }
 }
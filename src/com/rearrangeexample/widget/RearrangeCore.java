@@ -0,0 +1,1278 @@
+package com.rearrangeexample.widget;
+
+import android.annotation.TargetApi;
+import android.database.DataSetObserver;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.graphics.drawable.BitmapDrawable;
+import android.os.Build;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.view.View;
+import android.widget.AbsListView;
+import android.widget.ListAdapter;
+import com.nineoldandroids.animation.Animator;
+import com.nineoldandroids.animation.ValueAnimator;
+import com.nineoldandroids.view.ViewHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Rearrangement engine which doesn't depend on the layout of its host AbsListView. It keeps the order of item ids,
+ * diffs it on every data set change and moves hover cells between slots of the host. Bounds of slots come from
+ * a CellGeometry which caches bounds of laid out children, so a grid or a horizontal layout only provides geometry.
+ * Host forwards adapter, layout, draw, scroll and window callbacks to the core, a host which drags cells by itself
+ * hands dropped cells over to the core and learns about order changes through DragHost.
+ * NOTE! Adapter should be RearrangeAdapterWrapper with stable Ids
+ */
+public class RearrangeCore {
+
+    private static final int POSITION_NONE = MovementDiff.POSITION_NONE;
+
+    private static final int DEFAULT_ANIMATION_DURATION = 500;
+
+    //time one idle pass of snapshot prewarming may take, at least one cell is drawn per pass
+    private static final long PREWARM_BUDGET_NANOS = 4000000;
+
+    /**
+     * moving cells are drawn from bitmap snapshots
+     */
+    public static final int RENDER_MODE_BITMAP = 0;
+    /**
+     * moving cells are detached views drawn with canvas translation, no bitmaps are created
+     */
+    public static final int RENDER_MODE_LIVE_VIEW = 1;
+    /**
+     * moving cells are rendered once into hardware layers in the host overlay and only composited while moving,
+     * falls back to RENDER_MODE_BITMAP without hardware acceleration or below API 18
+     */
+    public static final int RENDER_MODE_HARDWARE_LAYER = 2;
+
+    static final int DEFAULT_WINDOW_OVERSCAN = 5;
+    static final int DEFAULT_WINDOW_SEARCH_DISTANCE = 200;
+
+    /**
+     * Bounds of slots of the host layout
+     */
+    public interface CellGeometry {
+        /**
+         * cache bounds of laid out children, called when a rearrangement starts and children still show the old order
+         * while the adapter already has the new one
+         */
+        void cacheLayout();
+
+        /**
+         * @param position adapter position in the old order
+         * @param out bounds of the slot in the cached layout, slots out of view are put right behind the edge
+         *            they are past, so they end at 0 when they are above or to the left of the host
+         */
+        void getSlotBounds(int position, Rect out);
+
+        /**
+         * @param position adapter position in the new order
+         * @param out bounds the cell of the position takes when the new order is laid out,
+         *            slots out of view are put right behind the edge like in getSlotBounds()
+         */
+        void getDestinationBounds(int position, Rect out);
+
+        /**
+         * @param position adapter position which is out of view
+         * @return current top of the position estimated from laid out children, used to follow a scroll
+         *         which moved the scroll anchor out of view within one frame
+         */
+        int estimateTop(int position);
+    }
+
+    /**
+     * Host which drags cells over the current order, the core tells it when the order changes
+     */
+    public interface DragHost {
+        boolean isDragging();
+
+        /**
+         * order is about to change, the dragged cell should be dropped back at its old place
+         */
+        void cancelDrag();
+
+        /**
+         * order changed by the dropped cell was taken, children moved by the drag can be put back
+         */
+        void onDropApplied();
+    }
+
+    private final AbsListView host;
+    private final CellGeometry geometry;
+    private final DragHost dragHost;
+    private RearrangeAdapterWrapper adapter;
+    private final DataSetObserver observer = new DataSetObserver() {
+        @Override
+        public void onChanged() {
+            onDataSetChanged();
+        }
+    };
+    private boolean observing = false;
+
+    private final IdOrder idOrder = new IdOrder();
+    private final MovementDiff movementDiff = new MovementDiff();
+
+    private boolean windowed = false;
+    private int windowOverscan = DEFAULT_WINDOW_OVERSCAN;
+    private int windowSearchDistance = DEFAULT_WINDOW_SEARCH_DISTANCE;
+
+    //diffs are computed in background, the update is held from observers until the result is ready
+    private boolean asyncDiff = false;
+    private DiffPipeline diffPipeline;
+    private boolean diffInFlight = false;
+    //diff of the held update, applied when the update reaches observers
+    private MovementDiff readyDiff;
+    private final RearrangeAdapterWrapper.UpdateInterceptor updateInterceptor =
+            new RearrangeAdapterWrapper.UpdateInterceptor() {
+        @Override
+        public boolean onUpdate() {
+            //explicit changes and drops are cheap to apply, windowed diffs are computed on the main thread
+            if (!asyncDiff || windowed || !observing || dropPending || adapter.getChangeLog().isIncremental()) return false;
+            submitDiff();
+            return true;
+        }
+    };
+
+    //data set change dispatched by the core itself, the change is already animated and cached
+    private boolean updateApplied = false;
+    //dropped cell waits for the data set change, position of the cell after it
+    private boolean dropPending = false;
+    private int dropPosition = POSITION_NONE;
+    //updates requested from the wrapper before the move was reported, the report has to add one
+    private int dropRequestedUpdates = 0;
+
+    private final List<HoverCell> hoverCells = new ArrayList<HoverCell>();
+    //destination positions of in-flight hover cells mapped to their indexes, used for retargeting
+    private final LongIntIndex hoverCellPositions = new LongIntIndex();
+    private int[] hiddenPositionsBuffer = new int[16];
+    private final Rect slotBounds = new Rect();
+    private final Rect retargetBounds = new Rect();
+    private final Rect slideBounds = new Rect();
+
+    //single clock which moves all hover cells, one invalidation per frame
+    private ValueAnimator frameClock;
+    //union of previous and current bounds of hover cells in the last frame
+    private final Rect dirtyRegion = new Rect();
+    private long lastFrameInvalidatedPixels = 0;
+    private boolean animating = false;
+    private int animationDuration = DEFAULT_ANIMATION_DURATION;
+    private int renderMode = RENDER_MODE_BITMAP;
+
+    private final SnapshotBitmapPool snapshotPool = new SnapshotBitmapPool();
+    private final Canvas snapshotCanvas = new Canvas();
+    //views moving cells are bound to, children of the host are never rebound for them
+    private final ScrapViewPool scrapPool = new ScrapViewPool();
+    private final AnimationBudget budget = new AnimationBudget();
+
+    //shifted positions mapped to their old ones, children slide from old slots after the next layout
+    private final LongIntIndex pendingSlides = new LongIntIndex();
+    //inserted positions and positions of cells over the budget, faded in after the next layout
+    private final LongIntIndex pendingFades = new LongIntIndex();
+    private boolean childAnimationsPending = false;
+    //children which slide or fade by their own properties instead of hover cells
+    private final List<View> animatedChildren = new ArrayList<View>();
+    private int[] childOffsetsX = new int[16];
+    private int[] childOffsetsY = new int[16];
+    private boolean[] childFadesIn = new boolean[16];
+
+    //item at the first visible position and its top, used to move hover cells along with the scroll
+    private int scrollAnchorPosition = POSITION_NONE;
+    private int scrollAnchorTop = 0;
+
+    //snapshots prepared ahead of a rearrangement, cells waiting for them are drawn on idle passes of the main looper
+    private final SnapshotCache snapshotCache = new SnapshotCache(snapshotPool);
+    private long[] prewarmIds = new long[16];
+    private int[] prewarmPositions = new int[16];
+    private int prewarmCount = 0;
+    private int prewarmNext = 0;
+    private boolean prewarmScheduled = false;
+    //scrap views bound for snapshots don't invalidate them
+    private boolean bindingOffscreen = false;
+    private final MessageQueue.IdleHandler prewarmIdleHandler = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            prewarmScheduled = prewarmSnapshots();
+            return prewarmScheduled;
+        }
+    };
+    private final RearrangeAdapterWrapper.OnRowBoundListener onRowBoundListener =
+            new RearrangeAdapterWrapper.OnRowBoundListener() {
+        @Override
+        public void onRowBound(int position) {
+            if (!bindingOffscreen && snapshotCache.size() > 0) snapshotCache.invalidate(adapter.getItemId(position));
+        }
+    };
+
+    //nothing is measured while listener is null
+    private RearrangeMetrics.Listener metricsListener;
+    private final RearrangeMetrics metrics = new RearrangeMetrics();
+
+    /**
+     * @param host view whose children are rearranged
+     * @param geometry bounds of slots of the host
+     */
+    public RearrangeCore(AbsListView host, CellGeometry geometry) {
+        this(host, geometry, null);
+    }
+
+    /**
+     * @param host view whose children are rearranged
+     * @param geometry bounds of slots of the host
+     * @param dragHost drag of the host which has to be finished when the order changes, may be null
+     */
+    public RearrangeCore(AbsListView host, CellGeometry geometry, DragHost dragHost) {
+        this.host = host;
+        this.geometry = geometry;
+        this.dragHost = dragHost;
+    }
+
+    /**
+     * should be called by the host before it passes the adapter to super.setAdapter(),
+     * so host's own observer is notified before the core
+     * @param adapter new adapter
+     */
+    public void setAdapter(ListAdapter adapter) {
+        if (!(adapter instanceof RearrangeAdapterWrapper)) throw new IllegalStateException("Adapter class is not correct, please use RearrangeAdapterWrapper instead");
+        if (!adapter.hasStableIds()) throw new IllegalStateException("Adapter doesn't have stable ids! Make sure your adapter has stable ids, and override hasStableIds() to return true.");
+        if (this.adapter != null) {
+            cancelDiff();
+            this.adapter.setOnRowBoundListener(null);
+            this.adapter.setUpdateInterceptor(null);
+            if (observing) this.adapter.unregisterDataSetObserver(observer);
+        }
+        prewarmCount = 0;
+        snapshotCache.clear();
+        this.adapter = (RearrangeAdapterWrapper) adapter;
+        adapter.registerDataSetObserver(observer);
+        observing = true;
+        this.adapter.setOnRowBoundListener(onRowBoundListener);
+        this.adapter.setUpdateInterceptor(updateInterceptor);
+        //moving views are retargeted, so updates don't have to wait for them
+        this.adapter.getUpdateScheduler().setHoldWhileAnimating(false);
+        this.adapter.getChangeLog().clear();
+        scrapPool.clear();
+        cacheIdOrder();
+    }
+
+    public void onAttachedToWindow() {
+        if (adapter != null && !observing) {
+            adapter.registerDataSetObserver(observer);
+            observing = true;
+        }
+    }
+
+    public void onDetachedFromWindow() {
+        if (adapter != null && observing) {
+            adapter.unregisterDataSetObserver(observer);
+            observing = false;
+        }
+        if (prewarmScheduled) {
+            Looper.myQueue().removeIdleHandler(prewarmIdleHandler);
+            prewarmScheduled = false;
+        }
+        prewarmCount = 0;
+        snapshotCache.clear();
+        cancelDiff();
+        if (diffPipeline != null) {
+            diffPipeline.shutdown();
+            diffPipeline = null;
+        }
+        //cells are released in onAnimationEnd
+        if (frameClock != null && frameClock.isRunning()) frameClock.end();
+        snapshotPool.clear();
+    }
+
+    /**
+     * should be called by the host after its children are laid out
+     */
+    public void onLayout() {
+        if (childAnimationsPending) applyChildAnimations();
+    }
+
+    /**
+     * @return start of the draw which is measured for metrics, 0 if it isn't measured
+     */
+    public long beginDraw() {
+        return animating && metricsListener != null ? System.nanoTime() : 0;
+    }
+
+    /**
+     * should be called by the host after its children are drawn
+     * @param canvas canvas of the host
+     */
+    public void draw(Canvas canvas) {
+        for (int i = 0; i < hoverCells.size(); i++) {
+            hoverCells.get(i).draw(canvas);
+        }
+    }
+
+    /**
+     * @param drawStart value returned by beginDraw() of this frame
+     */
+    public void endDraw(long drawStart) {
+        if (drawStart == 0 || metricsListener == null) return;
+        long drawNanos = System.nanoTime() - drawStart;
+        metricsListener.onFrame(drawNanos, metrics.onDraw(drawNanos));
+    }
+
+    /**
+     * should be called by the host from onScrollChanged(), moves in-flight hover cells by the distance
+     * the anchor item was scrolled, so input isn't blocked while views are moving.
+     * In windowed mode cached window follows the scroll position
+     */
+    public void onScroll() {
+        if (host.getChildCount() == 0) return;
+        int first = host.getFirstVisiblePosition();
+        if (animating && !hoverCells.isEmpty() && scrollAnchorPosition != POSITION_NONE) {
+            int anchorIndex = scrollAnchorPosition - first;
+            int anchorTop = anchorIndex >= 0 && anchorIndex < host.getChildCount()
+                    ? host.getChildAt(anchorIndex).getTop() : geometry.estimateTop(scrollAnchorPosition);
+            int dy = anchorTop - scrollAnchorTop;
+            if (dy != 0) {
+                for (int i = 0; i < hoverCells.size(); i++) {
+                    hoverCells.get(i).offset(dy);
+                }
+                host.invalidate();
+            }
+        }
+        scrollAnchorPosition = first;
+        scrollAnchorTop = host.getChildAt(0).getTop();
+        //window follows the scroll only while it is the applied order, a pending update is diffed against
+        //the last applied window, items which left it are found within the search distance
+        if (windowed && !animating && adapter != null && Math.max(0, first - windowOverscan) != idOrder.getStart()
+                && !adapter.getUpdateScheduler().hasPendingUpdate() && adapter.getChangeLog().isEmpty()) {
+            cacheIdOrder();
+        }
+    }
+
+    /**
+     * @param animationDuration duration of animations
+     */
+    public void setAnimationDuration(int animationDuration) {
+        this.animationDuration = animationDuration;
+    }
+
+    /**
+     * set the way moving cells are drawn, takes effect from the next rearrangement
+     * @param renderMode RENDER_MODE_BITMAP, RENDER_MODE_LIVE_VIEW or RENDER_MODE_HARDWARE_LAYER
+     */
+    public void setRenderMode(int renderMode) {
+        if (renderMode != RENDER_MODE_BITMAP && renderMode != RENDER_MODE_LIVE_VIEW
+                && renderMode != RENDER_MODE_HARDWARE_LAYER) {
+            throw new IllegalArgumentException("Unknown render mode " + renderMode);
+        }
+        this.renderMode = renderMode;
+    }
+
+    public int getRenderMode() {
+        return renderMode;
+    }
+
+    /**
+     * @param strategy MovementDiff.STRATEGY_ALL_CHANGED or MovementDiff.STRATEGY_MINIMAL_MOVES
+     */
+    public void setDiffStrategy(int strategy) {
+        movementDiff.setStrategy(strategy);
+        if (diffPipeline != null) diffPipeline.setStrategy(strategy);
+    }
+
+    /**
+     * @param asyncDiff true to compute diffs in background, the update reaches the host when its diff is ready
+     */
+    public void setAsyncDiff(boolean asyncDiff) {
+        this.asyncDiff = asyncDiff;
+        if (!asyncDiff) cancelDiff();
+    }
+
+    /**
+     * @return pipeline which computes diffs in async mode, null if async mode has never been used
+     */
+    public DiffPipeline getDiffPipeline() {
+        return diffPipeline;
+    }
+
+    /**
+     * @return true if an update is held from the host until its diff is computed in background
+     */
+    public boolean isDiffInFlight() {
+        return diffInFlight;
+    }
+
+    /**
+     * @param windowed true to cache and compare only visible and overscan positions
+     * @param overscan number of positions before and after visible ones to track
+     * @param searchDistance max distance from the window to search for items which left it
+     */
+    public void setWindowedMode(boolean windowed, int overscan, int searchDistance) {
+        this.windowed = windowed;
+        this.windowOverscan = overscan;
+        this.windowSearchDistance = searchDistance;
+        if (adapter != null) cacheIdOrder();
+    }
+
+    /**
+     * @param metricsListener receiver of diff, snapshot and frame timings of every animation, null to stop measuring
+     */
+    public void setMetricsListener(RearrangeMetrics.Listener metricsListener) {
+        this.metricsListener = metricsListener;
+        metrics.reset();
+    }
+
+    public boolean isAnimating() {
+        return animating;
+    }
+
+    /**
+     * @return true if nothing moves and no change is waiting, so a cell can be picked up
+     */
+    boolean isIdle() {
+        return !animating && !dropPending && !diffInFlight;
+    }
+
+    /**
+     * @return number of pixels invalidated by the last animation frame
+     */
+    public long getLastFrameInvalidatedPixels() {
+        return lastFrameInvalidatedPixels;
+    }
+
+    public SnapshotBitmapPool getSnapshotPool() {
+        return snapshotPool;
+    }
+
+    public ScrapViewPool getScrapPool() {
+        return scrapPool;
+    }
+
+    public AnimationBudget getAnimationBudget() {
+        return budget;
+    }
+
+    public SnapshotCache getSnapshotCache() {
+        return snapshotCache;
+    }
+
+    /**
+     * Snapshot visible and overscan cells on idle passes of the main thread, so the next rearrangement
+     * doesn't bind and draw them when it starts. Snapshots are kept by item id and content version,
+     * cells which are bound again lose them. Only snapshot render modes use them
+     */
+    public void prepareForRearrange() {
+        if (adapter == null || !usesSnapshots()) return;
+        int first = host.getFirstVisiblePosition();
+        int visible = host.getChildCount();
+        int start = Math.max(0, first - windowOverscan);
+        int end = Math.min(adapter.getCount(), first + visible + windowOverscan);
+        int count = Math.max(0, end - start);
+        if (prewarmIds.length < count) {
+            prewarmIds = new long[count];
+            prewarmPositions = new int[count];
+        }
+        //visible cells first, they are the most likely to move
+        prewarmCount = 0;
+        for (int position = first; position < Math.min(end, first + visible); position++) {
+            addPrewarmPosition(position);
+        }
+        for (int i = 1; i <= windowOverscan; i++) {
+            if (first - i >= start) addPrewarmPosition(first - i);
+            if (first + visible - 1 + i < end) addPrewarmPosition(first + visible - 1 + i);
+        }
+        prewarmNext = 0;
+        if (!prewarmScheduled && prewarmCount > 0) {
+            prewarmScheduled = true;
+            Looper.myQueue().addIdleHandler(prewarmIdleHandler);
+        }
+    }
+
+    /**
+     * Start rearrangement from a map of movements, in-flight cells are retargeted
+     * @param movementMap map which connects old positions with new
+     */
+    public void rearrange(Map<Integer, Integer> movementMap) {
+        if (metricsListener != null) beginMetrics();
+        boolean retarget = beginRearrangement();
+        for (Map.Entry<Integer, Integer> movement : movementMap.entrySet()) {
+            moveView(movement.getKey(), movement.getValue(), retarget);
+        }
+        if (retarget) refreshHiddenPositions();
+        if (metricsListener != null) metrics.onCells(countMovingCells(), host.getChildCount());
+        startAnimation();
+    }
+
+    /**
+     * Animate a permutation of items which the caller has already applied to the adapter data.
+     * Nothing is looked up by id and the update doesn't go through the update scheduler,
+     * so wrapper shouldn't be notified about this change
+     * @param newIndexOfOld new position of every item, indexed by its old position
+     * @throws IllegalArgumentException if the array is not a permutation of all adapter positions
+     */
+    public void rearrange(int[] newIndexOfOld) {
+        int count = newIndexOfOld.length;
+        if (count != adapter.getCount()) {
+            throw new IllegalArgumentException("Permutation has " + count + " items, adapter has " + adapter.getCount());
+        }
+        long diffStart = metricsListener != null ? System.nanoTime() : 0;
+        movementDiff.computePermutation(newIndexOfOld, count);
+        boolean heldUpdate = diffInFlight;
+        if (heldUpdate) {
+            //held update is superseded by this one, its order is read again below instead of permuted
+            diffPipeline.cancel();
+            diffInFlight = false;
+            idOrder.releaseReadBuffer();
+        }
+        if (dragHost != null && dragHost.isDragging()) dragHost.cancelDrag();
+        if (metricsListener != null) {
+            beginMetrics();
+            metrics.onDiff(System.nanoTime() - diffStart);
+        }
+        rearrange(movementDiff);
+        permuteIdOrder(newIndexOfOld);
+        adapter.getChangeLog().clear();
+        //host has to rebind its children, our observer skips this change
+        dispatchApplied();
+        if (heldUpdate) adapter.onDiffFinished();
+    }
+
+    /**
+     * Draw a laid out child into a cell which stays at its bounds, e.g. a dragged one
+     * @param child child to snapshot
+     * @return cell ready to be drawn
+     */
+    HoverCell snapshotChild(View child) {
+        Rect bounds = new Rect(child.getLeft(), child.getTop(), child.getRight(), child.getBottom());
+        //child is already laid out, it is drawn as is
+        Bitmap b = drawOnPooledBitmap(child);
+        HoverCell cell = new HoverCell(new BitmapDrawable(host.getResources(), b), b, bounds, new Rect(bounds));
+        cell.position = POSITION_NONE;
+        cell.setFraction(0f);
+        return cell;
+    }
+
+    /**
+     * Let a dropped cell settle to its end bounds, the order it changes is taken without animating it again.
+     * Host reports the move right after and calls endDrop()
+     * @param cell dropped cell, its position is where it settles
+     * @param orderChanged true if the host is going to notify the wrapper about the move
+     */
+    void dropCell(HoverCell cell, boolean orderChanged) {
+        hoverCells.add(cell);
+        //wrapper may be notified right away, the drop is applied while the cell is already settling
+        startAnimation();
+        if (orderChanged) {
+            dropPending = true;
+            dropPosition = cell.position;
+            dropRequestedUpdates = adapter.getUpdateScheduler().getRequestedUpdates();
+        }
+    }
+
+    /**
+     * Check that the wrapper was notified about the dropped move, the update itself may be still held by the scheduler
+     * @return false if nothing was requested, the drop is forgotten and the host should send the cell back
+     */
+    boolean endDrop() {
+        if (!dropPending || adapter.getUpdateScheduler().getRequestedUpdates() != dropRequestedUpdates) return true;
+        dropPending = false;
+        dropPosition = POSITION_NONE;
+        return false;
+    }
+
+    /**
+     * Free resources held by a cell when it is not drawn anymore
+     * @param cell finished cell
+     */
+    void releaseCell(HoverCell cell) {
+        if (cell.snapshot != null) {
+            snapshotPool.release(cell.snapshot);
+        }
+        else if (cell.layered) {
+            removeLayeredCell(cell.view);
+        }
+        if (cell.view != null) scrapPool.release(cell.view, cell.viewType);
+    }
+
+    /**
+     * Diff cached order with the new one and move cells of changed items
+     */
+    private void onDataSetChanged() {
+        if (updateApplied) return;
+        if (readyDiff != null) {
+            MovementDiff diff = readyDiff;
+            readyDiff = null;
+            //children still show the old order, the host rebinds them after this change
+            rearrange(diff);
+            idOrder.commit();
+            return;
+        }
+        ItemChangeLog changeLog = adapter.getChangeLog();
+        if (dropPending) {
+            applyDrop(changeLog);
+            return;
+        }
+        //cells can't be dragged over an order which is being changed
+        if (dragHost != null && dragHost.isDragging()) dragHost.cancelDrag();
+        if (metricsListener != null) beginMetrics();
+        if (changeLog.isIncremental()) {
+            long diffStart = metricsListener != null ? System.nanoTime() : 0;
+            //only visible cells can move, so changes are followed for the visible window
+            int first = host.getFirstVisiblePosition();
+            int newCount = Math.max(0, Math.min(host.getChildCount(), adapter.getCount() - first));
+            movementDiff.computeChanges(changeLog, first, host.getChildCount(), first, newCount);
+            if (diffStart != 0) metrics.onDiff(System.nanoTime() - diffStart);
+            rearrange(movementDiff);
+            applyChangesToIdOrder(changeLog);
+            changeLog.clear();
+            return;
+        }
+        //changes are included into the new order which is read now
+        changeLog.clear();
+        long diffStart = metricsListener != null ? System.nanoTime() : 0;
+        readIds();
+        if (windowed) {
+            movementDiff.computeWindow(idOrder.getIds(), idOrder.getStart(), idOrder.getCount(),
+                    idOrder.getReadIds(), idOrder.getReadStart(), idOrder.getReadCount(), adapter, windowSearchDistance);
+        }
+        else {
+            movementDiff.compute(idOrder.getIds(), idOrder.getCount(), idOrder.getReadIds(), idOrder.getReadCount());
+        }
+        if (diffStart != 0) metrics.onDiff(System.nanoTime() - diffStart);
+        rearrange(movementDiff);
+        idOrder.commit();
+    }
+
+    /**
+     * Capture current order of ids and compute its diff in background, the update is held from observers
+     * until the diff is ready, so children keep showing the old order while the host lays out and scrolls
+     */
+    private void submitDiff() {
+        if (diffPipeline == null) {
+            diffPipeline = new DiffPipeline(new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    host.post(command);
+                }
+            });
+            diffPipeline.setStrategy(movementDiff.getStrategy());
+        }
+        //cells can't be dragged over an order which is being changed
+        if (dragHost != null && dragHost.isDragging()) dragHost.cancelDrag();
+        if (metricsListener != null) beginMetrics();
+        //changes are included into the new order which is read now
+        adapter.getChangeLog().clear();
+        if (diffInFlight) {
+            //superseded diff may still read the buffer, so the new order goes to a fresh one
+            idOrder.releaseReadBuffer();
+        }
+        else {
+            diffInFlight = true;
+            adapter.onDiffStarted();
+        }
+        readIds();
+        diffPipeline.submit(idOrder.getIds(), idOrder.getCount(), idOrder.getReadIds(), idOrder.getReadCount(), new DiffPipeline.Callback() {
+            @Override
+            public void onDiffReady(MovementDiff diff) {
+                diffInFlight = false;
+                if (metricsListener != null) metrics.onDiff(diffPipeline.getLastDiffNanos());
+                readyDiff = diff;
+                adapter.dispatchDataSetChanged();
+                adapter.onDiffFinished();
+            }
+        });
+    }
+
+    /**
+     * Drop the diff which is computed in background, held update reaches observers without animation
+     */
+    private void cancelDiff() {
+        if (!diffInFlight) return;
+        diffPipeline.cancel();
+        diffInFlight = false;
+        //cancelled diff may still read the buffer
+        idOrder.releaseReadBuffer();
+        cacheIdOrder();
+        dispatchApplied();
+        adapter.onDiffFinished();
+    }
+
+    /**
+     * Notify observers about a change which is already animated or cached, our observer skips it
+     */
+    private void dispatchApplied() {
+        updateApplied = true;
+        adapter.dispatchDataSetChanged();
+        updateApplied = false;
+    }
+
+    /**
+     * Take the order changed by the dropped cell without animating it again
+     * @param changeLog changes since the cached order
+     */
+    private void applyDrop(ItemChangeLog changeLog) {
+        dropPending = false;
+        if (dragHost != null) dragHost.onDropApplied();
+        adapter.clearHiddenPositions();
+        //the cell stays hidden only while the dropped cell still settles over it, nothing clears it later
+        if (animating && dropPosition < adapter.getCount()) adapter.addHiddenPosition(dropPosition);
+        dropPosition = POSITION_NONE;
+        if (changeLog.isIncremental()) applyChangesToIdOrder(changeLog);
+        else cacheIdOrder();
+        changeLog.clear();
+    }
+
+    /**
+     * Start rearrangement from precomputed movements, in-flight cells are retargeted
+     * @param diff movements connecting old positions with new
+     */
+    private void rearrange(MovementDiff diff) {
+        boolean retarget = beginRearrangement();
+        int first = host.getFirstVisiblePosition();
+        int last = first + host.getChildCount() - 1;
+        //cells which are on the screen now get the budget first, cells coming from outside fall back before them
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < diff.size(); i++) {
+                int from = diff.getFrom(i);
+                if (from == POSITION_NONE) {
+                    //item wasn't found, it fades in like an inserted one
+                    if (pass == 0) addFade(diff.getTo(i), first, last);
+                    continue;
+                }
+                if ((from >= first && from <= last) != (pass == 0)) continue;
+                moveView(from, diff.getTo(i), retarget);
+            }
+        }
+        if (retarget) {
+            //shifted children slide by themselves, but an in-flight cell of a shifted item has to follow it
+            for (int i = 0; i < diff.getShiftCount(); i++) {
+                retargetCell(diff.getShiftFrom(i), diff.getShiftTo(i));
+            }
+            //cell of a removed item fades out where it is instead of hiding another cell
+            for (int i = 0; i < diff.getRemovedCount(); i++) {
+                int cellIndex = hoverCellPositions.get(diff.getRemoved(i), POSITION_NONE);
+                if (cellIndex == POSITION_NONE) continue;
+                HoverCell cell = hoverCells.get(cellIndex);
+                cell.position = POSITION_NONE;
+                cell.setAlphaRange(cell.path.getAlpha(), 0);
+            }
+            refreshHiddenPositions();
+        }
+        prepareChildAnimations(diff, first, last);
+        if (metricsListener != null) metrics.onCells(countMovingCells(), host.getChildCount());
+        startAnimation();
+    }
+
+    /**
+     * Start measuring a new animation unless the update retargets the current one
+     */
+    private void beginMetrics() {
+        if (!animating && !diffInFlight) metrics.reset();
+        metrics.onUpdate(System.nanoTime());
+    }
+
+    /**
+     * @return number of hover cells of moving items, cells of removed items are not counted
+     */
+    private int countMovingCells() {
+        int count = 0;
+        for (int i = 0; i < hoverCells.size(); i++) {
+            if (hoverCells.get(i).position != POSITION_NONE) count++;
+        }
+        return count;
+    }
+
+    /**
+     * If views are already moving freeze in-flight cells at their current bounds, so they can be retargeted
+     * @return true if there are in-flight cells
+     */
+    private boolean beginRearrangement() {
+        if (!animating) scrapPool.resetCounters();
+        geometry.cacheLayout();
+        //sliding children are rebound by the next layout, so they stop where they are
+        settleChildAnimations();
+        pendingFades.reset(0);
+        if (!animating || hoverCells.isEmpty()) {
+            budget.begin(0, 0);
+            return false;
+        }
+        hoverCellPositions.reset(hoverCells.size());
+        long snapshotBytes = 0;
+        for (int i = 0; i < hoverCells.size(); i++) {
+            HoverCell cell = hoverCells.get(i);
+            cell.freeze();
+            if (cell.position != POSITION_NONE) hoverCellPositions.putIfAbsent(cell.position, i);
+            if (cell.snapshot != null) snapshotBytes += (long) cell.snapshot.getRowBytes() * cell.snapshot.getHeight();
+        }
+        budget.begin(hoverCells.size(), snapshotBytes);
+        return true;
+    }
+
+    /**
+     * prepare a hover cell for a moving item, or retarget in-flight cell of the item
+     * @param currentPosition current position
+     * @param newPosition new position
+     * @param retarget true if in-flight cells were frozen by beginRearrangement()
+     */
+    private void moveView(int currentPosition, int newPosition, boolean retarget) {
+        if (retarget && retargetCell(currentPosition, newPosition)) return;
+        int first = host.getFirstVisiblePosition();
+        int last = first + host.getChildCount() - 1;
+        if ((currentPosition < first || currentPosition > last) && (newPosition < first || newPosition > last)) return;
+
+        geometry.getDestinationBounds(newPosition, slotBounds);
+        int width = slotBounds.width();
+        if (!budget.tryAcquire(usesSnapshots() ? 4L * width * slotBounds.height() : 0)) {
+            //cell isn't hidden, so the next layout places it at once unless it fades in
+            if (budget.getCurrentFallback() == AnimationBudget.FALLBACK_FADE_IN) addFade(newPosition, first, last);
+            return;
+        }
+        Rect initialBounds = new Rect();
+        Rect endBounds = new Rect();
+        if (snapshotCache.size() > 0 && usesSnapshots()) {
+            Bitmap prepared = snapshotCache.take(adapter.getItemId(newPosition), adapter.getItemVersion(newPosition));
+            if (prepared != null) {
+                //nothing is bound or drawn for a prepared snapshot
+                adapter.addHiddenPosition(newPosition);
+                getStartBounds(currentPosition, prepared.getWidth(), prepared.getHeight(), initialBounds);
+                getEndBounds(newPosition, prepared.getWidth(), prepared.getHeight(), endBounds);
+                HoverCell cell = new HoverCell(new BitmapDrawable(host.getResources(), prepared), prepared,
+                        initialBounds, endBounds);
+                cell.position = newPosition;
+                cell.setFraction(0f);
+                hoverCells.add(cell);
+                return;
+            }
+        }
+        int viewType = adapter.getItemViewType(newPosition);
+        View v = bindOffscreen(newPosition, width);
+        adapter.addHiddenPosition(newPosition);
+        getStartBounds(currentPosition, v.getMeasuredWidth(), v.getMeasuredHeight(), initialBounds);
+        getEndBounds(newPosition, v.getMeasuredWidth(), v.getMeasuredHeight(), endBounds);
+
+        HoverCell cell;
+        if (renderMode == RENDER_MODE_HARDWARE_LAYER && canUseHardwareLayers()) {
+            cell = setUpLayeredCell(v, initialBounds, endBounds);
+            cell.viewType = viewType;
+        }
+        else if (renderMode == RENDER_MODE_LIVE_VIEW) {
+            v.layout(0, 0, v.getMeasuredWidth(), v.getMeasuredHeight());
+            cell = new HoverCell(v, false, initialBounds, endBounds);
+            cell.viewType = viewType;
+        }
+        else {
+            v.layout(0, 0, v.getMeasuredWidth(), v.getMeasuredHeight());
+            Bitmap b = drawOnPooledBitmap(v);
+            cell = new HoverCell(new BitmapDrawable(host.getResources(), b), b, initialBounds, endBounds);
+            //snapshot is taken, view can be bound to the next cell
+            scrapPool.release(v, viewType);
+        }
+        cell.position = newPosition;
+        cell.setFraction(0f);
+        hoverCells.add(cell);
+    }
+
+    /**
+     * send in-flight cell of the item at current position to the new one
+     * @param currentPosition position the cell was moving to
+     * @param newPosition new position of its item
+     * @return true if there is such a cell
+     */
+    private boolean retargetCell(int currentPosition, int newPosition) {
+        int cellIndex = hoverCellPositions.get(currentPosition, POSITION_NONE);
+        if (cellIndex == POSITION_NONE) return false;
+        HoverCell cell = hoverCells.get(cellIndex);
+        cell.position = newPosition;
+        HoverPath path = cell.path;
+        getEndBounds(newPosition, path.getEndRight() - path.getEndLeft(), cell.getEndHeight(), retargetBounds);
+        cell.setEndBounds(retargetBounds);
+        return true;
+    }
+
+    /**
+     * bind a scrap view to the item at position and measure it, children of the host are left as they are
+     * @param position adapter position
+     * @param width width of the slot
+     * @return measured view
+     */
+    private View bindOffscreen(int position, int width) {
+        bindingOffscreen = true;
+        View v = scrapPool.bind(adapter, position, host);
+        bindingOffscreen = false;
+        //position may be still hidden by the previous animation
+        v.setVisibility(View.VISIBLE);
+        //scrap view may keep size of another cell, so it is always measured
+        v.measure(View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+        return v;
+    }
+
+    /**
+     * compute bounds a cell of given size starts from, the slot of its position in the cached layout
+     */
+    private void getStartBounds(int position, int width, int height, Rect out) {
+        geometry.getSlotBounds(position, slotBounds);
+        placeCell(width, height, out);
+    }
+
+    /**
+     * compute bounds a cell of given size ends at, the slot of its position in the new order
+     */
+    private void getEndBounds(int position, int width, int height, Rect out) {
+        geometry.getDestinationBounds(position, slotBounds);
+        placeCell(width, height, out);
+    }
+
+    private void placeCell(int width, int height, Rect out) {
+        //slots behind the top or left edge are anchored to their far side, so cells don't show up early
+        int left = slotBounds.right <= 0 ? slotBounds.right - width : slotBounds.left;
+        int top = slotBounds.bottom <= 0 ? slotBounds.bottom - height : slotBounds.top;
+        out.set(left, top, left + width, top + height);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private HoverCell setUpLayeredCell(View v, Rect initialBounds, Rect endBounds) {
+        v.layout(initialBounds.left, initialBounds.top,
+                initialBounds.left + v.getMeasuredWidth(), initialBounds.top + v.getMeasuredHeight());
+        v.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+        host.getOverlay().add(v);
+        v.buildLayer();
+        return new HoverCell(v, true, initialBounds, endBounds);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private void removeLayeredCell(View v) {
+        host.getOverlay().remove(v);
+        v.setLayerType(View.LAYER_TYPE_NONE, null);
+        v.setTranslationX(0);
+        v.setTranslationY(0);
+        v.setAlpha(1f);
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private boolean canUseHardwareLayers() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2 && host.isHardwareAccelerated();
+    }
+
+    /**
+     * @return true if moving cells are drawn from snapshots in current render mode
+     */
+    private boolean usesSnapshots() {
+        return renderMode == RENDER_MODE_BITMAP
+                || renderMode == RENDER_MODE_HARDWARE_LAYER && !canUseHardwareLayers();
+    }
+
+    /**
+     * Draw a laid out view on a pooled bitmap
+     * @param v view to draw on bitmap
+     * @return bitmap representing view
+     */
+    private Bitmap drawOnPooledBitmap(View v) {
+        long start = metricsListener != null ? System.nanoTime() : 0;
+        int misses = snapshotPool.getMisses();
+        Bitmap bitmap = snapshotPool.acquire(v.getWidth(), v.getHeight());
+        snapshotCanvas.setBitmap(bitmap);
+        v.draw(snapshotCanvas);
+        if (start != 0) {
+            long allocated = snapshotPool.getMisses() != misses ? (long) bitmap.getRowBytes() * bitmap.getHeight() : 0;
+            metrics.onSnapshot(System.nanoTime() - start, allocated);
+        }
+        return bitmap;
+    }
+
+    private void addPrewarmPosition(int position) {
+        prewarmPositions[prewarmCount] = position;
+        prewarmIds[prewarmCount] = adapter.getItemId(position);
+        prewarmCount++;
+    }
+
+    /**
+     * Draw snapshots of prewarm positions until the time budget of this idle pass is spent
+     * @return true if there are cells left for the next idle pass
+     */
+    private boolean prewarmSnapshots() {
+        if (adapter == null || !usesSnapshots()) return false;
+        //moving cells are hidden or translated, they are drawn after the animation
+        if (animating || diffInFlight || dragHost != null && dragHost.isDragging()) return prewarmNext < prewarmCount;
+        //slots of cells out of view are taken from the current layout
+        geometry.cacheLayout();
+        long start = System.nanoTime();
+        while (prewarmNext < prewarmCount) {
+            int position = prewarmPositions[prewarmNext];
+            long id = prewarmIds[prewarmNext];
+            prewarmNext++;
+            //order has changed since the cells were queued
+            if (position >= adapter.getCount() || adapter.getItemId(position) != id || snapshotCache.contains(id)) continue;
+            long version = adapter.getItemVersion(position);
+            int childIndex = position - host.getFirstVisiblePosition();
+            if (childIndex >= 0 && childIndex < host.getChildCount()) {
+                //visible cell is already laid out, it is just drawn
+                snapshotCache.put(id, version, drawOnPooledBitmap(host.getChildAt(childIndex)));
+            }
+            else {
+                int viewType = adapter.getItemViewType(position);
+                geometry.getDestinationBounds(position, slotBounds);
+                View v = bindOffscreen(position, slotBounds.width());
+                v.layout(0, 0, v.getMeasuredWidth(), v.getMeasuredHeight());
+                snapshotCache.put(id, version, drawOnPooledBitmap(v));
+                scrapPool.release(v, viewType);
+            }
+            if (System.nanoTime() - start > PREWARM_BUDGET_NANOS) break;
+        }
+        return prewarmNext < prewarmCount;
+    }
+
+    /**
+     * Remember shifts and inserts of visible positions, they are applied to children after the next layout.
+     * Visible removed cells fade out from their snapshots
+     * @param diff diff with shifts, inserts and removals
+     */
+    private void prepareChildAnimations(MovementDiff diff, int first, int last) {
+        pendingSlides.reset(0);
+        for (int i = 0; i < diff.getShiftCount(); i++) {
+            int newPosition = diff.getShiftTo(i);
+            if (newPosition >= first && newPosition <= last) {
+                pendingSlides.putIfAbsent(newPosition, diff.getShiftFrom(i));
+            }
+        }
+        for (int i = 0; i < diff.getInsertedCount(); i++) {
+            addFade(diff.getInserted(i), first, last);
+        }
+        childAnimationsPending = pendingSlides.size() > 0 || pendingFades.size() > 0;
+        for (int i = 0; i < diff.getRemovedCount(); i++) {
+            int oldPosition = diff.getRemoved(i);
+            if (oldPosition < first || oldPosition > last) continue;
+            View child = host.getChildAt(oldPosition - first);
+            //removed cells over the budget just disappear
+            if (budget.tryAcquire(4L * child.getWidth() * child.getHeight())) {
+                HoverCell cell = snapshotChild(child);
+                cell.setAlphaRange(255, 0);
+                hoverCells.add(cell);
+            }
+        }
+    }
+
+    /**
+     * remember a visible new position which fades in after the next layout
+     */
+    private void addFade(int position, int first, int last) {
+        if (position < first || position > last) return;
+        pendingFades.putIfAbsent(position, 0);
+        childAnimationsPending = true;
+    }
+
+    /**
+     * Translate laid out children of shifted positions back to their old slots and make fading ones transparent,
+     * the frame clock moves them to zero translation and full opacity
+     */
+    private void applyChildAnimations() {
+        childAnimationsPending = false;
+        animatedChildren.clear();
+        int first = host.getFirstVisiblePosition();
+        float fraction = frameClock != null && frameClock.isRunning() ? frameClock.getAnimatedFraction() : 1f;
+        for (int i = 0; i < host.getChildCount(); i++) {
+            int oldPosition = pendingSlides.get(first + i, POSITION_NONE);
+            boolean fadesIn = pendingFades.get(first + i, POSITION_NONE) != POSITION_NONE;
+            if (oldPosition == POSITION_NONE && !fadesIn) continue;
+            View child = host.getChildAt(i);
+            int offsetX = 0;
+            int offsetY = 0;
+            if (oldPosition != POSITION_NONE) {
+                //children coming from out of view slide in from the edge
+                getStartBounds(oldPosition, child.getWidth(), child.getHeight(), slideBounds);
+                offsetX = slideBounds.left - child.getLeft();
+                offsetY = slideBounds.top - child.getTop();
+            }
+            int index = animatedChildren.size();
+            if (childOffsetsY.length <= index) {
+                childOffsetsX = grow(childOffsetsX);
+                childOffsetsY = grow(childOffsetsY);
+                boolean[] biggerFades = new boolean[childOffsetsY.length];
+                System.arraycopy(childFadesIn, 0, biggerFades, 0, childFadesIn.length);
+                childFadesIn = biggerFades;
+            }
+            childOffsetsX[index] = offsetX;
+            childOffsetsY[index] = offsetY;
+            childFadesIn[index] = fadesIn;
+            animatedChildren.add(child);
+            ViewHelper.setTranslationX(child, offsetX * (1 - fraction));
+            ViewHelper.setTranslationY(child, offsetY * (1 - fraction));
+            if (fadesIn) ViewHelper.setAlpha(child, fraction);
+        }
+    }
+
+    private static int[] grow(int[] array) {
+        int[] bigger = new int[array.length * 2];
+        System.arraycopy(array, 0, bigger, 0, array.length);
+        return bigger;
+    }
+
+    /**
+     * Put sliding and fading children to their laid out state
+     */
+    private void settleChildAnimations() {
+        childAnimationsPending = false;
+        for (int i = 0; i < animatedChildren.size(); i++) {
+            View child = animatedChildren.get(i);
+            ViewHelper.setTranslationX(child, 0);
+            ViewHelper.setTranslationY(child, 0);
+            if (childFadesIn[i]) ViewHelper.setAlpha(child, 1f);
+        }
+        animatedChildren.clear();
+    }
+
+    /**
+     * Hide positions at destinations of all hover cells after retargeting
+     */
+    private void refreshHiddenPositions() {
+        if (hiddenPositionsBuffer.length < hoverCells.size()) hiddenPositionsBuffer = new int[hoverCells.size()];
+        int count = 0;
+        for (int i = 0; i < hoverCells.size(); i++) {
+            int position = hoverCells.get(i).position;
+            if (position != POSITION_NONE) hiddenPositionsBuffer[count++] = position;
+        }
+        adapter.clearHiddenPositions();
+        adapter.addHiddenPositions(hiddenPositionsBuffer, count);
+    }
+
+    /**
+     * Move all prepared hover cells with the shared frame clock
+     */
+    private void startAnimation() {
+        if (hoverCells.isEmpty() && !childAnimationsPending) return;
+        if (frameClock == null) frameClock = createFrameClock();
+        if (frameClock.isRunning()) {
+            //cells were frozen at their current bounds, so the clock starts over without a jump
+            frameClock.setCurrentPlayTime(0);
+            return;
+        }
+        if (host.getChildCount() > 0) {
+            scrollAnchorPosition = host.getFirstVisiblePosition();
+            scrollAnchorTop = host.getChildAt(0).getTop();
+        }
+        frameClock.setDuration(animationDuration);
+        frameClock.start();
+    }
+
+    /**
+     * Create animator which advances every hover cell from a single fraction
+     * @return animator from 0 to 1
+     */
+    private ValueAnimator createFrameClock() {
+        ValueAnimator clock = ValueAnimator.ofFloat(0f, 1f);
+        clock.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+            @Override
+            public void onAnimationUpdate(ValueAnimator valueAnimator) {
+                long now = System.nanoTime();
+                budget.onFrame(now);
+                if (metricsListener != null) metrics.onAnimationFrame(now);
+                float fraction = valueAnimator.getAnimatedFraction();
+                dirtyRegion.setEmpty();
+                for (int i = 0; i < hoverCells.size(); i++) {
+                    HoverCell cell = hoverCells.get(i);
+                    dirtyRegion.union(cell.currentBounds);
+                    cell.setFraction(fraction);
+                    dirtyRegion.union(cell.currentBounds);
+                }
+                for (int i = 0; i < animatedChildren.size(); i++) {
+                    View child = animatedChildren.get(i);
+                    ViewHelper.setTranslationX(child, childOffsetsX[i] * (1 - fraction));
+                    ViewHelper.setTranslationY(child, childOffsetsY[i] * (1 - fraction));
+                    if (childFadesIn[i]) ViewHelper.setAlpha(child, fraction);
+                }
+                //only the area hover cells have left or entered has to be redrawn
+                if (dirtyRegion.intersect(0, 0, host.getWidth(), host.getHeight())) {
+                    lastFrameInvalidatedPixels = (long) dirtyRegion.width() * dirtyRegion.height();
+                    host.invalidate(dirtyRegion);
+                }
+                else {
+                    lastFrameInvalidatedPixels = 0;
+                }
+            }
+        });
+        clock.addListener(new Animator.AnimatorListener() {
+            @Override
+            public void onAnimationStart(Animator animation) {
+                adapter.onRearrangeStarted();
+                budget.onAnimationStart();
+                animating = true;
+            }
+
+            @Override
+            public void onAnimationEnd(Animator animation) {
+                for (int i = 0; i < hoverCells.size(); i++) {
+                    releaseCell(hoverCells.get(i));
+                }
+                hoverCells.clear();
+                settleChildAnimations();
+                for (int i = 0; i < host.getChildCount(); i++) {
+                    host.getChildAt(i).setVisibility(View.VISIBLE);
+                }
+                animating = false;
+                budget.onAnimationEnd();
+                adapter.clearHiddenPositions();
+                //reported before the held update can start the next animation
+                if (metricsListener != null) {
+                    metricsListener.onRearrangeFinished(metrics);
+                    metrics.reset();
+                }
+                adapter.onRearrangeFinished();
+            }
+
+            @Override
+            public void onAnimationCancel(Animator animation) {
+                //cells are released in onAnimationEnd which follows cancel
+            }
+
+            @Override
+            public void onAnimationRepeat(Animator animation) {
+
+            }
+        });
+        return clock;
+    }
+
+    /**
+     * Cache current order of items using only IDs
+     */
+    private void cacheIdOrder() {
+        readIds();
+        idOrder.commit();
+    }
+
+    /**
+     * Read current order of item IDs without committing it,
+     * in windowed mode only visible and overscan positions are read
+     */
+    private void readIds() {
+        int start = 0;
+        int end = adapter.getCount();
+        if (windowed) {
+            int first = host.getFirstVisiblePosition();
+            start = Math.max(0, first - windowOverscan);
+            end = Math.min(end, first + Math.max(host.getChildCount(), 1) + windowOverscan);
+        }
+        idOrder.read(adapter, start, Math.max(0, end - start));
+    }
+
+    /**
+     * Apply a permutation to the cached order, the order is read again
+     * if the cached one doesn't cover the whole list or is older than the adapter
+     * @param newIndexOfOld new position of every item, indexed by its old position
+     */
+    private void permuteIdOrder(int[] newIndexOfOld) {
+        if (windowed || !idOrder.permute(newIndexOfOld)) cacheIdOrder();
+    }
+
+    /**
+     * Apply explicit changes to the cached order, only ids of inserted items are read
+     * @param changeLog changes since the cached order
+     */
+    private void applyChangesToIdOrder(ItemChangeLog changeLog) {
+        //window is small, it is read again, as is an order the adapter was changed behind
+        if (windowed || !idOrder.applyChanges(changeLog, adapter)) cacheIdOrder();
+    }
+}
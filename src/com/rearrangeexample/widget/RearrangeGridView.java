@@ -0,0 +1,267 @@
+package com.rearrangeexample.widget;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.util.AttributeSet;
+import android.view.View;
+import android.widget.GridView;
+import android.widget.ListAdapter;
+
+/**
+ * GridView which animates movements of its cells after a data set change. Animation is done by RearrangeCore,
+ * the grid only tells bounds of its slots from cached columns and rows of laid out children.
+ * Windowed mode, async diffs, snapshot prewarming and metrics work the same way as in RearrangeListView.
+ * NOTE! Adapter should be RearrangeAdapterWrapper with stable Ids
+ */
+public class RearrangeGridView extends GridView {
+
+    /**
+     * moving cells are drawn from bitmap snapshots
+     */
+    public static final int RENDER_MODE_BITMAP = RearrangeCore.RENDER_MODE_BITMAP;
+    /**
+     * moving cells are detached views drawn with canvas translation, no bitmaps are created
+     */
+    public static final int RENDER_MODE_LIVE_VIEW = RearrangeCore.RENDER_MODE_LIVE_VIEW;
+    /**
+     * moving cells are rendered once into hardware layers in the grid overlay and only composited while moving,
+     * falls back to RENDER_MODE_BITMAP without hardware acceleration or below API 18
+     */
+    public static final int RENDER_MODE_HARDWARE_LAYER = RearrangeCore.RENDER_MODE_HARDWARE_LAYER;
+
+    private final RearrangeCore core = new RearrangeCore(this, new GridCellGeometry(this));
+
+    public RearrangeGridView(Context context) {
+        super(context);
+    }
+
+    public RearrangeGridView(Context context, AttributeSet attrs, int defStyle) {
+        super(context, attrs, defStyle);
+    }
+
+    public RearrangeGridView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        long drawStart = core.beginDraw();
+        super.dispatchDraw(canvas);
+        core.draw(canvas);
+        core.endDraw(drawStart);
+    }
+
+    /**
+     * set the duration of animations
+     * @param animationDuration new duration
+     */
+    public void setAnimationDuration(int animationDuration) {
+        core.setAnimationDuration(animationDuration);
+    }
+
+    /**
+     * set the way moving cells are drawn, takes effect from the next rearrangement
+     * @param renderMode RENDER_MODE_BITMAP, RENDER_MODE_LIVE_VIEW or RENDER_MODE_HARDWARE_LAYER
+     */
+    public void setRenderMode(int renderMode) {
+        core.setRenderMode(renderMode);
+    }
+
+    public int getRenderMode() {
+        return core.getRenderMode();
+    }
+
+    /**
+     * @param strategy MovementDiff.STRATEGY_ALL_CHANGED or MovementDiff.STRATEGY_MINIMAL_MOVES
+     */
+    public void setDiffStrategy(int strategy) {
+        core.setDiffStrategy(strategy);
+    }
+
+    /**
+     * @return limits of cells animated at once, use it to set them and the fallback of cells over them
+     */
+    public AnimationBudget getAnimationBudget() {
+        return core.getAnimationBudget();
+    }
+
+    /**
+     * @return pool of hover cell snapshots, use it to set memory limit and read hit/miss/eviction stats
+     */
+    public SnapshotBitmapPool getSnapshotPool() {
+        return core.getSnapshotPool();
+    }
+
+    /**
+     * @return pool of views moving cells are bound to
+     */
+    public ScrapViewPool getScrapPool() {
+        return core.getScrapPool();
+    }
+
+    /**
+     * @see RearrangeListView#setAsyncDiff(boolean)
+     * @param asyncDiff true to compute diffs in background
+     */
+    public void setAsyncDiff(boolean asyncDiff) {
+        core.setAsyncDiff(asyncDiff);
+    }
+
+    /**
+     * @see RearrangeListView#setWindowedMode(boolean, int, int)
+     * @param windowed true to enable windowed mode
+     * @param overscan number of cells before and after visible ones to track
+     * @param searchDistance max distance from the window to search for cells which left it
+     */
+    public void setWindowedMode(boolean windowed, int overscan, int searchDistance) {
+        core.setWindowedMode(windowed, overscan, searchDistance);
+    }
+
+    /**
+     * @param metricsListener receiver of diff, snapshot and frame timings of every animation, null to stop measuring
+     */
+    public void setMetricsListener(RearrangeMetrics.Listener metricsListener) {
+        core.setMetricsListener(metricsListener);
+    }
+
+    /**
+     * @see RearrangeListView#prepareForRearrange()
+     */
+    public void prepareForRearrange() {
+        core.prepareForRearrange();
+    }
+
+    /**
+     * @return snapshots prepared by prepareForRearrange()
+     */
+    public SnapshotCache getSnapshotCache() {
+        return core.getSnapshotCache();
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        core.onAttachedToWindow();
+        super.onAttachedToWindow();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        core.onDetachedFromWindow();
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    public void setAdapter(ListAdapter adapter) {
+        core.setAdapter(adapter);
+        super.setAdapter(adapter);
+    }
+
+    @Override
+    protected void layoutChildren() {
+        super.layoutChildren();
+        core.onLayout();
+    }
+
+    @Override
+    protected void onScrollChanged(int l, int t, int oldl, int oldt) {
+        super.onScrollChanged(l, t, oldl, oldt);
+        core.onScroll();
+    }
+
+    /**
+     * Slots of the grid, columns are taken from the first laid out row and rows from the first child of each row.
+     * Rows out of view are extrapolated with the average row pitch and stop right behind the edge
+     */
+    private static class GridCellGeometry implements RearrangeCore.CellGeometry {
+
+        private final GridView grid;
+        private int first = 0;
+        private int columns = 1;
+        private int rows = 0;
+        private int[] columnLefts = new int[4];
+        private int[] columnRights = new int[4];
+        private int[] rowTops = new int[16];
+        private int[] rowBottoms = new int[16];
+        private int rowPitch = 0;
+
+        GridCellGeometry(GridView grid) {
+            this.grid = grid;
+        }
+
+        @Override
+        public void cacheLayout() {
+            int count = grid.getChildCount();
+            first = grid.getFirstVisiblePosition();
+            rows = 0;
+            if (count == 0) return;
+            //children of a row share their top, so the first row gives the number of columns
+            int firstTop = grid.getChildAt(0).getTop();
+            columns = 1;
+            while (columns < count && grid.getChildAt(columns).getTop() == firstTop) {
+                columns++;
+            }
+            if (columnLefts.length < columns) {
+                columnLefts = new int[columns];
+                columnRights = new int[columns];
+            }
+            for (int i = 0; i < columns; i++) {
+                View child = grid.getChildAt(i);
+                columnLefts[i] = child.getLeft();
+                columnRights[i] = child.getRight();
+            }
+            rows = (count + columns - 1) / columns;
+            if (rowTops.length < rows) {
+                rowTops = new int[rows];
+                rowBottoms = new int[rows];
+            }
+            for (int row = 0; row < rows; row++) {
+                rowTops[row] = grid.getChildAt(row * columns).getTop();
+                int bottom = rowTops[row];
+                for (int i = row * columns; i < Math.min(count, (row + 1) * columns); i++) {
+                    bottom = Math.max(bottom, grid.getChildAt(i).getBottom());
+                }
+                rowBottoms[row] = bottom;
+            }
+            rowPitch = rows > 1 ? (rowTops[rows - 1] - rowTops[0]) / (rows - 1) : rowBottoms[0] - rowTops[0];
+        }
+
+        @Override
+        public void getSlotBounds(int position, Rect out) {
+            if (rows == 0) {
+                out.set(0, 0, grid.getWidth(), 0);
+                return;
+            }
+            int offset = position - first;
+            int row = offset >= 0 ? offset / columns : -((columns - 1 - offset) / columns);
+            int column = offset - row * columns;
+            int left = columnLefts[column];
+            int right = columnRights[column];
+            if (row < 0) {
+                out.set(left, -(rowBottoms[0] - rowTops[0]), right, 0);
+            }
+            else if (row < rows) {
+                out.set(left, rowTops[row], right, rowBottoms[row]);
+            }
+            else {
+                //rows after the last laid out one may still be in view when the grid isn't filled
+                int height = rowBottoms[rows - 1] - rowTops[rows - 1];
+                int top = Math.min(rowTops[rows - 1] + (row - rows + 1) * rowPitch, grid.getHeight());
+                out.set(left, top, right, top + height);
+            }
+        }
+
+        @Override
+        public void getDestinationBounds(int position, Rect out) {
+            //cells of a grid have the same size, a slot is the same in both orders
+            getSlotBounds(position, out);
+        }
+
+        @Override
+        public int estimateTop(int position) {
+            int offset = position - grid.getFirstVisiblePosition();
+            int row = offset >= 0 ? offset / columns : -((columns - 1 - offset) / columns);
+            return grid.getChildAt(0).getTop() + row * rowPitch;
+        }
+    }
+}
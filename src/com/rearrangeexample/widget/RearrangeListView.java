@@ -1,41 +1,118 @@
 package com.rearrangeexample.widget;
 
+import android.annotation.TargetApi;
 import android.content.Context;
-import android.database.DataSetObserver;
-import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Rect;
-import android.graphics.drawable.BitmapDrawable;
-import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.os.SystemClock;
 import android.util.AttributeSet;
+import android.view.HapticFeedbackConstants;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewConfiguration;
 import android.widget.ListAdapter;
 import android.widget.ListView;
-import com.nineoldandroids.animation.*;
+import com.nineoldandroids.animation.ValueAnimator;
+import com.nineoldandroids.view.ViewHelper;
 
-import java.util.*;
+import java.util.Map;
 
 /**
  * @author V.Bolnykh
- * View which animatedly rearranges child views
+ * View which animatedly rearranges child views. Animation is done by RearrangeCore, the list tells bounds
+ * of its rows from cached row heights and drags rows by itself.
  * NOTE! Adapter should have stable Ids
  */
 public class RearrangeListView extends ListView {
 
-    private static final int POSITION_NONE = -1;
+    private static final int POSITION_NONE = MovementDiff.POSITION_NONE;
 
-    private static final int DEFAULT_ANIMATION_DURATION = 500;
+    /**
+     * moving rows are drawn from bitmap snapshots
+     */
+    public static final int RENDER_MODE_BITMAP = RearrangeCore.RENDER_MODE_BITMAP;
+    /**
+     * moving rows are detached views drawn with canvas translation, no bitmaps are created
+     */
+    public static final int RENDER_MODE_LIVE_VIEW = RearrangeCore.RENDER_MODE_LIVE_VIEW;
+    /**
+     * moving rows are rendered once into hardware layers in the list overlay and only composited while moving,
+     * falls back to RENDER_MODE_BITMAP without hardware acceleration or below API 18
+     */
+    public static final int RENDER_MODE_HARDWARE_LAYER = RearrangeCore.RENDER_MODE_HARDWARE_LAYER;
+
+    //part of the list height near each edge where a dragged row scrolls the list
+    private static final float AUTO_SCROLL_EDGE = 0.15f;
+    //list heights per second scrolled when a dragged row is at the very edge
+    private static final float AUTO_SCROLL_SPEED = 1.5f;
+    //part of the remaining distance rows shifted by a dragged row cover in one 60 fps frame
+    private static final float DRAG_SHIFT_SMOOTHING = 0.3f;
+
+    //heights of laid out rows, destinations of moving rows are found from them
+    private final RowHeightCache rowHeights = new RowHeightCache();
+    private final RearrangeCore core = new RearrangeCore(this, new ListCellGeometry(this, rowHeights),
+            new RearrangeCore.DragHost() {
+        @Override
+        public boolean isDragging() {
+            return dragCell != null;
+        }
+
+        @Override
+        public void cancelDrag() {
+            finishDrag(false);
+        }
 
-    private List<HoverCell> hoverCells = new ArrayList<HoverCell>();
-    private List<Animator> animators = new ArrayList<Animator>();
-    private List<Long> oldIds = new ArrayList<Long>();
-    private boolean animating = false;
-	private int currentTopPos = 0;
+        @Override
+        public void onDropApplied() {
+            clearDragTranslations();
+        }
+    });
 
-    private AdapterDatasetChangedObserver mObserver = new AdapterDatasetChangedObserver();
+    /**
+     * Receiver of rows reordered by dragging
+     */
+    public interface OnItemMovedListener {
+        /**
+         * row was dropped at a new position, data should be reordered and the wrapper notified before this method
+         * returns, preferably with RearrangeAdapterWrapper.notifyItemMoved(). If the wrapper isn't notified
+         * the data is considered unchanged and the row goes back to its old place
+         * @param fromPosition position of the dragged row
+         * @param toPosition position the row was dropped at
+         */
+        void onItemMoved(int fromPosition, int toPosition);
+    }
 
-    private int animationDuration = DEFAULT_ANIMATION_DURATION;
+    //long press drag, the dragged row is a hover cell which follows the finger, neighbours slide by translation
+    private boolean dragEnabled = false;
+    private OnItemMovedListener onItemMovedListener;
+    private float downX;
+    private float downY;
+    private int downPosition = POSITION_NONE;
+    private final Runnable startDragRunnable = new Runnable() {
+        @Override
+        public void run() {
+            startDrag();
+        }
+    };
+    private HoverCell dragCell;
+    private int dragFrom;
+    private int dragTo;
+    private int dragExtent;
+    private float dragY;
+    private float dragTouchOffset;
+    //ticks once per display frame while a row is dragged
+    private ValueAnimator dragClock;
+    private long lastDragFrameTime;
+    //offsets of visible rows for hit-testing, rebuilt when visible rows change
+    private final PrefixSumTree dragOffsets = new PrefixSumTree();
+    private int[] rowExtents = new int[16];
+    private int dragOffsetsFirst = POSITION_NONE;
+    private int dragOffsetsCount = 0;
+    //children translated in the last drag frame, their translation is reset when they are recycled
+    private View[] draggedChildren = new View[16];
+    private int draggedChildrenFirst = 0;
+    private int draggedChildrenCount = 0;
 
 
     public RearrangeListView(Context context) {
@@ -50,26 +127,13 @@ public class RearrangeListView extends ListView {
         super(context, attrs);
     }
 
-    private final static TypeEvaluator<Rect> sBoundEvaluator = new TypeEvaluator<Rect>() {
-        public Rect evaluate(float fraction, Rect startValue, Rect endValue) {
-            return new Rect(interpolate(startValue.left, endValue.left, fraction), interpolate(startValue.top, endValue.top, fraction), interpolate(startValue.right, endValue.right, fraction),
-                    interpolate(startValue.bottom, endValue.bottom, fraction));
-        }
-
-        public int interpolate(int start, int end, float fraction) {
-            return (int) (start + fraction * (end - start));
-        }
-    };
-
-
     @Override
     protected void dispatchDraw(Canvas canvas) {
+        long drawStart = core.beginDraw();
         super.dispatchDraw(canvas);
-        if (hoverCells.size()>0) {
-            for (HoverCell eachCell : hoverCells) {
-                eachCell.drawable.draw(canvas);
-            }
-        }
+        core.draw(canvas);
+        if (dragCell != null) dragCell.draw(canvas);
+        core.endDraw(drawStart);
     }
 
     /**
@@ -77,278 +141,559 @@ public class RearrangeListView extends ListView {
      * @param animationDuration new duration
      */
     public void setAnimationDuration(int animationDuration) {
-        this.animationDuration = animationDuration;
+        core.setAnimationDuration(animationDuration);
     }
 
     /**
-     * Method which starts children rearrangement
-     * @param movementMap map which connects old children positions with new
+     * set the way moving rows are drawn, takes effect from the next rearrangement
+     * @param renderMode RENDER_MODE_BITMAP, RENDER_MODE_LIVE_VIEW or RENDER_MODE_HARDWARE_LAYER
      */
-    public void rearrangeViews(Map<Integer, Integer> movementMap) {
-        Set<Integer> currentLocations = movementMap.keySet();
-        for (Integer currentLocation: currentLocations) {
-            moveView(currentLocation, movementMap.get(currentLocation));
-        }
-        AnimatorSet set = new AnimatorSet();
-        set.playTogether(animators);
+    public void setRenderMode(int renderMode) {
+        core.setRenderMode(renderMode);
+    }
 
-        set.addListener(new Animator.AnimatorListener() {
-            @Override
-            public void onAnimationStart(Animator animation) {
-                ((RearrangeAdapterWrapper)getAdapter()).toggleUpdatingState();
-                animating = true;
-            }
+    public int getRenderMode() {
+        return core.getRenderMode();
+    }
 
-            @Override
-            public void onAnimationEnd(Animator animation) {
-                hoverCells.clear();
-                animators.clear();
-                for (int i = 0; i < getChildCount(); i++) {
-                    getChildAt(i).setVisibility(VISIBLE);
-                }
-                animating = false;
-                ((RearrangeAdapterWrapper)getAdapter()).toggleUpdatingState();
-                ((RearrangeAdapterWrapper)getAdapter()).clearHiddenPositions();
-            }
+    /**
+     * @return number of pixels invalidated by the last animation frame, the whole list is width * height
+     */
+    public long getLastFrameInvalidatedPixels() {
+        return core.getLastFrameInvalidatedPixels();
+    }
 
-            @Override
-            public void onAnimationCancel(Animator animation) {
+    /**
+     * @return pool of hover cell snapshots, use it to set memory limit and read hit/miss/eviction stats
+     */
+    public SnapshotBitmapPool getSnapshotPool() {
+        return core.getSnapshotPool();
+    }
 
-            }
+    /**
+     * @param metricsListener receiver of diff, snapshot and frame timings of every animation, null to stop measuring
+     */
+    public void setMetricsListener(RearrangeMetrics.Listener metricsListener) {
+        core.setMetricsListener(metricsListener);
+    }
 
-            @Override
-            public void onAnimationRepeat(Animator animation) {
+    /**
+     * In drag mode a long press picks a row up, it follows the finger and scrolls the list near its edges,
+     * other rows make room for it. When it is dropped OnItemMovedListener reorders the data
+     * @param dragEnabled true to reorder rows by dragging
+     */
+    public void setDragEnabled(boolean dragEnabled) {
+        this.dragEnabled = dragEnabled;
+        if (!dragEnabled) {
+            removeCallbacks(startDragRunnable);
+            if (dragCell != null) finishDrag(false);
+        }
+    }
 
-            }
-        });
-        set.start();
+    /**
+     * @param onItemMovedListener receiver of dropped rows, without it dropped rows go back to their places
+     */
+    public void setOnItemMovedListener(OnItemMovedListener onItemMovedListener) {
+        this.onItemMovedListener = onItemMovedListener;
     }
 
     /**
-     * prepare bitmaps from view and set up animator
-     * @param currentPosition current view position
-     * @param newPosition new position
+     * Snapshot visible and overscan rows on idle passes of the main thread, so the next rearrangement
+     * doesn't bind and draw them when it starts. Snapshots are kept by item id and content version,
+     * rows which are bound again lose them. Only snapshot render modes use them
      */
-    private void moveView (int currentPosition, int newPosition) {
-        if (positionsOutOfView(currentPosition, newPosition)) {
-            return;
-        }
+    public void prepareForRearrange() {
+        core.prepareForRearrange();
+    }
 
-        int childPosition = currentPosition > getFirstVisiblePosition() + getChildCount() - 1 || currentPosition < getFirstVisiblePosition() ?
-                POSITION_NONE : currentPosition - getFirstVisiblePosition();
+    /**
+     * @return snapshots prepared by prepareForRearrange(), its counters show how many moving rows used them
+     */
+    public SnapshotCache getSnapshotCache() {
+        return core.getSnapshotCache();
+    }
 
-        View convertView = childPosition == POSITION_NONE ? null : getChildAt(childPosition);
+    /**
+     * @return limits of rows animated at once, use it to set them and the fallback of rows over them
+     */
+    public AnimationBudget getAnimationBudget() {
+        return core.getAnimationBudget();
+    }
 
-        View currentView = getAdapter().getView(newPosition,
-                convertView,
-                null);
-        ((RearrangeAdapterWrapper)getAdapter()).addHiddenPosition(newPosition);
-        HoverCell cell = setUpHoverCell(currentView, currentPosition, newPosition);
-        hoverCells.add(cell);
-        prepareAnimation(cell);
+    /**
+     * @return pool of views moving rows are bound to, its counters show inflations and rebinds of the last animation
+     */
+    public ScrapViewPool getScrapPool() {
+        return core.getScrapPool();
     }
 
     /**
-     * creates a cell to be drawn on the screen during animation
-     * @param v current view
-     * @param currentPos current view's position
-     * @param newPos new view's position
-     * @return cell ready to be drawn
+     * set the diff strategy, with MovementDiff.STRATEGY_MINIMAL_MOVES only real moves get hover cells
+     * and rows which only shifted slide by translation of their own views. Windowed mode always reports every change
+     * @param strategy MovementDiff.STRATEGY_ALL_CHANGED or MovementDiff.STRATEGY_MINIMAL_MOVES
      */
-    private HoverCell setUpHoverCell(View v, int currentPos, int newPos) {
-        Rect hoverCellOriginalBounds;
+    public void setDiffStrategy(int strategy) {
+        core.setDiffStrategy(strategy);
+    }
 
-        //if view is outside of current visible region - measure it
-        if (v.getMeasuredWidth() <= 0) {
-            int specWidth = MeasureSpec.makeMeasureSpec(getWidth(), MeasureSpec.AT_MOST);
-            v.measure(specWidth, specWidth);
-        }
+    /**
+     * In async mode ids are captured on the main thread and the diff is computed in background.
+     * Until the result arrives the update is held from the list and further adapter updates are coalesced,
+     * so the list keeps showing the old order while it scrolls and lays out.
+     * Windowed mode is always computed on the main thread
+     * @param asyncDiff true to compute diffs in background
+     */
+    public void setAsyncDiff(boolean asyncDiff) {
+        core.setAsyncDiff(asyncDiff);
+    }
 
-        //if current position is outside of current field of view start from the first invisible position
-        if (currentPos < getFirstVisiblePosition()) {
-            hoverCellOriginalBounds = new Rect(0, -v.getMeasuredHeight(), v.getMeasuredWidth(), 0);
-        }
-        else if (currentPos > getFirstVisiblePosition() + getChildCount() - 1) {
-            hoverCellOriginalBounds = new Rect(0,
-                    (getChildCount() - 1) * v.getMeasuredHeight(),
-                    v.getMeasuredWidth(),
-                    getChildCount() * v.getMeasuredHeight());
-        }
-        else {
-            int w = v.getMeasuredWidth();
-            int h = v.getMeasuredHeight();
-            int top = v.getTop();
-            int left = v.getLeft();
-            hoverCellOriginalBounds = new Rect(left, top, left + w, top + h);
-        }
+    /**
+     * @return pipeline which computes diffs in async mode, null if async mode has never been used
+     */
+    public DiffPipeline getDiffPipeline() {
+        return core.getDiffPipeline();
+    }
 
-        Bitmap b = getBitmapFromView(v);
+    /**
+     * In windowed mode only ids of visible rows and overscan rows around them are cached and compared,
+     * so rearrangement cost doesn't depend on the size of the data set.
+     * Rows which leave the window are searched not further than search distance from it
+     * and fade in if not found
+     * @param windowed true to enable windowed mode
+     * @param overscan number of rows above and below visible ones to track
+     * @param searchDistance max distance from the window to search for rows which left it
+     */
+    public void setWindowedMode(boolean windowed, int overscan, int searchDistance) {
+        core.setWindowedMode(windowed, overscan, searchDistance);
+    }
 
-        BitmapDrawable drawable = new BitmapDrawable(getResources(), b);
+    /**
+     * @see #setWindowedMode(boolean, int, int)
+     * @param windowed true to enable windowed mode with default overscan and search distance
+     */
+    public void setWindowedMode(boolean windowed) {
+        setWindowedMode(windowed, RearrangeCore.DEFAULT_WINDOW_OVERSCAN, RearrangeCore.DEFAULT_WINDOW_SEARCH_DISTANCE);
+    }
 
-        int newTop;
-        int newBottom;
+    /**
+     * Method which starts children rearrangement
+     * @param movementMap map which connects old children positions with new
+     */
+    public void rearrangeViews(Map<Integer, Integer> movementMap) {
+        core.rearrange(movementMap);
+    }
 
-        //if new position is outside of current field of view end with the first invisible position
-        if (newPos < getFirstVisiblePosition()) {
-            newTop = -v.getHeight();
-            newBottom = 0;
-        }
-        else if (newPos > getFirstVisiblePosition() + getChildCount() - 1) {
-            newTop = getHeight();
-            newBottom = getHeight() + v.getHeight();
-        }
-        else {
-            newTop = currentTopPos + (newPos - getFirstVisiblePosition()) * (v.getMeasuredHeight() + getDividerHeight());
-            newBottom = newTop + v.getMeasuredHeight();
+    /**
+     * Animate a permutation of items which the caller has already applied to the adapter data.
+     * Nothing is looked up by id and the update doesn't go through the update scheduler,
+     * so wrapper shouldn't be notified about this change
+     * @param newIndexOfOld new position of every item, indexed by its old position
+     * @throws IllegalArgumentException if the array is not a permutation of all adapter positions
+     */
+    public void rearrangeViews(int[] newIndexOfOld) {
+        core.rearrange(newIndexOfOld);
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        core.onAttachedToWindow();
+        super.onAttachedToWindow();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        if (dragCell != null) {
+            dragClock.cancel();
+            clearDragTranslations();
+            core.releaseCell(dragCell);
+            dragCell = null;
         }
+        removeCallbacks(startDragRunnable);
+        core.onDetachedFromWindow();
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    public void setAdapter(ListAdapter adapter) {
+        core.setAdapter(adapter);
+        super.setAdapter(adapter);
+        rowHeights.clear();
+    }
 
-        Rect hoverCellNewBounds = new Rect(hoverCellOriginalBounds.left,
-                newTop,
-                hoverCellOriginalBounds.right,
-                newBottom);
+    @Override
+    protected void layoutChildren() {
+        super.layoutChildren();
+        //children of moving rows may be hidden and rebound, and while an update is held children and ids
+        //are in different orders, so heights are cached only while nothing moves or waits
+        if (!core.isAnimating() && !core.isDiffInFlight() && getAdapter() != null) cacheRowHeights();
+        core.onLayout();
+    }
+
+    /**
+     * Remember heights of laid out rows by their ids
+     */
+    private void cacheRowHeights() {
+        int first = getFirstVisiblePosition();
+        int count = Math.min(getChildCount(), getAdapter().getCount() - first);
+        for (int i = 0; i < count; i++) {
+            rowHeights.put(getAdapter().getItemId(first + i), getChildAt(i).getHeight());
+        }
+    }
 
-        drawable.setBounds(hoverCellNewBounds);
+    @Override
+    protected void onScrollChanged(int l, int t, int oldl, int oldt) {
+        super.onScrollChanged(l, t, oldl, oldt);
+        core.onScroll();
+    }
 
-        return new HoverCell(drawable, hoverCellOriginalBounds, hoverCellNewBounds);
+    @Override
+    public boolean dispatchTouchEvent(MotionEvent ev) {
+        if (!dragEnabled) return super.dispatchTouchEvent(ev);
+        if (dragCell != null) {
+            onDragTouchEvent(ev);
+            return true;
+        }
+        trackLongPress(ev);
+        return super.dispatchTouchEvent(ev);
     }
 
     /**
-     * Create a bitmap for a view
-     * @param v view to draw on bitmap
-     * @return bitmap representing view
+     * Start drag when a row is pressed long enough without moving
+     * @param ev touch event
      */
-    private Bitmap getBitmapFromView(View v) {
-        Bitmap bitmap = Bitmap.createBitmap(v.getMeasuredWidth(), v.getMeasuredHeight(), Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(bitmap);
-        v.layout(0, 0, v.getMeasuredWidth(), v.getMeasuredHeight());
-        v.draw(canvas);
-        return bitmap;
+    private void trackLongPress(MotionEvent ev) {
+        switch (ev.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                downX = ev.getX();
+                downY = ev.getY();
+                dragY = downY;
+                downPosition = pointToPosition((int) downX, (int) downY);
+                if (downPosition != INVALID_POSITION) {
+                    postDelayed(startDragRunnable, ViewConfiguration.getLongPressTimeout());
+                }
+                break;
+            case MotionEvent.ACTION_MOVE:
+                dragY = ev.getY();
+                int touchSlop = ViewConfiguration.get(getContext()).getScaledTouchSlop();
+                if (Math.abs(ev.getX() - downX) > touchSlop || Math.abs(ev.getY() - downY) > touchSlop) {
+                    removeCallbacks(startDragRunnable);
+                }
+                break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                removeCallbacks(startDragRunnable);
+                break;
+        }
     }
 
     /**
-     * Check if current and new positions are out of ListViews field of view
-     * @param currentPosition current view position
-     * @param newPosition new view position
-     * @return true if view is outside of field of view
+     * Pick up the pressed row, the list stops handling the gesture
      */
-    private boolean positionsOutOfView(int currentPosition, int newPosition) {
-        return currentPosition < getFirstVisiblePosition() && newPosition < getFirstVisiblePosition() ||
-                currentPosition > getFirstVisiblePosition() + getChildCount()-1 && newPosition > getFirstVisiblePosition() + getChildCount()-1 ||
-                currentPosition < getFirstVisiblePosition() && newPosition > getFirstVisiblePosition() + getChildCount()-1 ||
-                currentPosition > getFirstVisiblePosition() + getChildCount()-1 && newPosition < getFirstVisiblePosition();
+    private void startDrag() {
+        int childIndex = downPosition - getFirstVisiblePosition();
+        if (!core.isIdle() || childIndex < 0 || childIndex >= getChildCount()) return;
+        View child = getChildAt(childIndex);
+        dragCell = core.snapshotChild(child);
+        dragCell.position = downPosition;
+        dragFrom = downPosition;
+        dragTo = downPosition;
+        dragExtent = child.getHeight() + getDividerHeight();
+        dragTouchOffset = dragY - child.getTop();
+        draggedChildrenCount = 0;
+        dragOffsetsFirst = POSITION_NONE;
+        child.setVisibility(INVISIBLE);
+        ((RearrangeAdapterWrapper) getAdapter()).addHiddenPosition(dragFrom);
+
+        long now = SystemClock.uptimeMillis();
+        MotionEvent cancel = MotionEvent.obtain(now, now, MotionEvent.ACTION_CANCEL, downX, dragY, 0);
+        super.dispatchTouchEvent(cancel);
+        cancel.recycle();
+        if (getParent() != null) getParent().requestDisallowInterceptTouchEvent(true);
+        performHapticFeedback(HapticFeedbackConstants.LONG_PRESS);
+
+        if (dragClock == null) dragClock = createDragClock();
+        lastDragFrameTime = 0;
+        dragClock.start();
+        invalidate();
     }
 
     /**
-     * Prepare animator for a HoverCell
-     * @param cell cell to be animated
+     * Create animator which runs drag frames until the row is dropped
+     * @return endless animator
      */
-    private void prepareAnimation(HoverCell cell) {
-        ObjectAnimator hoverViewAnimator = ObjectAnimator.ofObject(cell.drawable,
-                "bounds",
-                sBoundEvaluator,
-                cell.initialBounds,
-                cell.endBounds);
-        hoverViewAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+    private ValueAnimator createDragClock() {
+        ValueAnimator clock = ValueAnimator.ofFloat(0f, 1f);
+        clock.setDuration(1000);
+        clock.setRepeatCount(ValueAnimator.INFINITE);
+        clock.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
             @Override
             public void onAnimationUpdate(ValueAnimator valueAnimator) {
-                invalidate();
+                if (dragCell != null) onDragFrame();
             }
         });
-        hoverViewAnimator.setDuration(animationDuration);
-        animators.add(hoverViewAnimator);
+        return clock;
+    }
+
+    private void onDragTouchEvent(MotionEvent ev) {
+        switch (ev.getActionMasked()) {
+            case MotionEvent.ACTION_MOVE:
+                //the row follows the finger on the next frame
+                dragY = ev.getY();
+                break;
+            case MotionEvent.ACTION_UP:
+                finishDrag(true);
+                break;
+            case MotionEvent.ACTION_CANCEL:
+                finishDrag(false);
+                break;
+        }
     }
 
     /**
-     * Auxiliary class to store initial and final coordinates of hovercell and its drawable
+     * Scroll near the edges, move the dragged row under the finger, find its target and shift other rows
      */
-    private class HoverCell {
-        private Drawable drawable;
-        private Rect initialBounds;
-        private Rect endBounds;
-
-        private HoverCell(Drawable drawable, Rect initialBounds, Rect endBounds) {
-            this.drawable = drawable;
-            this.initialBounds = initialBounds;
-            this.endBounds = endBounds;
-        }
+    private void onDragFrame() {
+        long now = SystemClock.uptimeMillis();
+        long frameMillis = lastDragFrameTime == 0 ? 16 : Math.min(now - lastDragFrameTime, 100);
+        lastDragFrameTime = now;
+        autoScroll(frameMillis);
+        dragCell.offset((int) (dragY - dragTouchOffset) - dragCell.currentBounds.top);
+        updateDragTarget();
+        shiftDraggedNeighbours(frameMillis);
+        invalidate();
     }
 
     /**
-     * Prepare a map connecting old and new positions
-     * @return map
+     * Scroll the list when the finger is near its edge, speed grows towards the edge and doesn't depend on frame rate
+     * @param frameMillis time since the previous frame
      */
-    private Map<Integer, Integer> prepareMovementMap() {
-        Map<Integer, Integer> movementMap = new HashMap<Integer, Integer>();
-        for (int i=0; i<getAdapter().getCount(); i++) {
-            int foundPos = -1;
-            for (int j=0; j< oldIds.size(); j++) {
-                if (getAdapter().getItemId(i) == oldIds.get(j)) {
-                    foundPos = j;
-                    break;
-                }
+    private void autoScroll(long frameMillis) {
+        float edge = getHeight() * AUTO_SCROLL_EDGE;
+        if (edge <= 0) return;
+        float proximity = 0;
+        if (dragY < edge) proximity = -Math.min(1f, (edge - dragY) / edge);
+        else if (dragY > getHeight() - edge) proximity = Math.min(1f, (dragY - getHeight() + edge) / edge);
+        int dy = (int) (proximity * AUTO_SCROLL_SPEED * getHeight() * frameMillis / 1000);
+        if (dy != 0) scrollListByCompat(dy);
+    }
 
-            }
-            if (i != foundPos) movementMap.put(foundPos, i);
+    private void scrollListByCompat(int dy) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            scrollListByKitKat(dy);
+        }
+        else {
+            smoothScrollBy(dy, 0);
         }
-        return movementMap;
     }
 
-
-    @Override
-    protected void onAttachedToWindow() {
-        if (getAdapter() != null && mObserver == null) {
-            mObserver = new AdapterDatasetChangedObserver();
-            getAdapter().registerDataSetObserver(mObserver);
-        }
-        super.onAttachedToWindow();
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private void scrollListByKitKat(int dy) {
+        scrollListBy(dy);
     }
 
-    @Override
-    protected void onDetachedFromWindow() {
-        if (getAdapter() != null && mObserver != null) {
-            getAdapter().unregisterDataSetObserver(mObserver);
+    /**
+     * Find the row whose place is under the center of the dragged row in O(log n) over offsets of visible rows
+     */
+    private void updateDragTarget() {
+        int first = getFirstVisiblePosition();
+        int count = Math.min(getChildCount(), getAdapter().getCount() - first);
+        if (count <= 0) return;
+        if (first != dragOffsetsFirst || count != dragOffsetsCount) {
+            if (rowExtents.length < count) rowExtents = new int[count];
+            for (int i = 0; i < count; i++) {
+                rowExtents[i] = getChildAt(i).getHeight() + getDividerHeight();
+            }
+            dragOffsets.build(rowExtents, count);
+            dragOffsetsFirst = first;
+            dragOffsetsCount = count;
         }
-        super.onDetachedFromWindow();
+        int center = dragCell.currentBounds.centerY() - getChildAt(0).getTop();
+        dragTo = first + (center < 0 ? 0 : Math.min(dragOffsets.indexOf(center), count - 1));
     }
 
-    @Override
-    public void setAdapter(ListAdapter adapter) {
-        if (!(adapter instanceof RearrangeAdapterWrapper)) throw new IllegalStateException("Adapter class is not correct, please use RearrangeAdapterWrapper instead");
-        if (!adapter.hasStableIds()) throw new IllegalStateException("Adapter doesn't have stable ids! Make sure your adapter has stable ids, and override hasStableIds() to return true.");
-        adapter.registerDataSetObserver(mObserver);
-        super.setAdapter(adapter);
-        cacheIdOrder();
+    /**
+     * Slide rows between the dragged row and its target by its height, other rows slide back
+     * @param frameMillis time since the previous frame
+     */
+    private void shiftDraggedNeighbours(long frameMillis) {
+        int first = getFirstVisiblePosition();
+        int count = getChildCount();
+        //views which were recycled since the last frame lose their translation
+        for (int i = 0; i < draggedChildrenCount; i++) {
+            int childIndex = draggedChildrenFirst + i - first;
+            if (childIndex < 0 || childIndex >= count || getChildAt(childIndex) != draggedChildren[i]) {
+                ViewHelper.setTranslationY(draggedChildren[i], 0);
+            }
+        }
+        float smoothing = 1f - (float) Math.pow(1f - DRAG_SHIFT_SMOOTHING, frameMillis / 16f);
+        if (draggedChildren.length < count) draggedChildren = new View[count + (count >> 1)];
+        for (int i = 0; i < count; i++) {
+            int position = first + i;
+            View child = getChildAt(i);
+            int previousIndex = position - draggedChildrenFirst;
+            boolean rebound = previousIndex < 0 || previousIndex >= draggedChildrenCount
+                    || draggedChildren[previousIndex] != child;
+            float target = 0;
+            if (position > dragFrom && position <= dragTo) target = -dragExtent;
+            else if (position < dragFrom && position >= dragTo) target = dragExtent;
+            float current = rebound ? target : ViewHelper.getTranslationY(child);
+            float next = current + (target - current) * smoothing;
+            ViewHelper.setTranslationY(child, Math.abs(target - next) < 1 ? target : next);
+        }
+        for (int i = 0; i < count; i++) {
+            draggedChildren[i] = getChildAt(i);
+        }
+        draggedChildrenFirst = first;
+        draggedChildrenCount = count;
     }
 
-    @Override
-    public boolean dispatchTouchEvent(MotionEvent ev) {
-        //disable touch response while views are animated
-        return animating || super.dispatchTouchEvent(ev);
+    /**
+     * Drop the dragged row, it settles into the place made for it and the listener reorders the data
+     * @param commit false to put the row back to its old place
+     */
+    private void finishDrag(boolean commit) {
+        dragClock.cancel();
+        HoverCell cell = dragCell;
+        dragCell = null;
+        updateDragTarget();
+        int to = commit && onItemMovedListener != null ? dragTo : dragFrom;
+        settleDragCell(cell, to);
+        if (to == dragFrom) clearDragTranslations();
+        //rows stay shifted until the new order is laid out
+        core.dropCell(cell, to != dragFrom);
+        if (to == dragFrom) return;
+        onItemMovedListener.onItemMoved(dragFrom, to);
+        if (!core.endDrop()) {
+            //wrapper wasn't notified, the data keeps the old order and the row goes back
+            clearDragTranslations();
+            settleDragCell(cell, dragFrom);
+        }
     }
 
     /**
-     * Cache old order of items using only IDs
+     * Send the dropped row from where it is to the place left for it among shifted rows
+     * @param cell dropped row
+     * @param to position the row settles at
      */
-    private void cacheIdOrder() {
-        oldIds.clear();
-        for (int i=0; i<getAdapter().getCount(); i++) {
-            oldIds.add(getAdapter().getItemId(i));
+    private void settleDragCell(HoverCell cell, int to) {
+        int first = getFirstVisiblePosition();
+        int top = getChildCount() > 0 ? getChildAt(0).getTop() : 0;
+        int gapTop = to > dragFrom ? top + dragOffsets.prefixSum(to + 1 - first) - dragExtent
+                : top + dragOffsets.prefixSum(to - first);
+        if (to == dragFrom && (dragFrom < first || dragFrom >= first + getChildCount())) {
+            //old place is out of view, the row fades out where it is
+            gapTop = cell.currentBounds.top;
+            cell.setAlphaRange(255, 0);
+        }
+        cell.freeze();
+        HoverPath path = cell.path;
+        path.setEnd(path.getEndLeft(), gapTop, path.getEndRight(), gapTop + cell.getEndHeight());
+        cell.position = to;
+    }
+
+    private void clearDragTranslations() {
+        for (int i = 0; i < draggedChildrenCount; i++) {
+            ViewHelper.setTranslationY(draggedChildren[i], 0);
+            draggedChildren[i] = null;
         }
+        draggedChildrenCount = 0;
     }
 
     /**
-     * Observer class to monitor data set changes
+     * Slots of the list, old slots are bounds of laid out children and new ones are offsets of cached row heights
+     * in the new order, so rows with different heights are placed without measuring.
+     * Slots out of view stop right behind the edge
      */
-    private class AdapterDatasetChangedObserver extends DataSetObserver {
+    private static class ListCellGeometry implements RearrangeCore.CellGeometry {
+
+        private final ListView list;
+        private final RowHeightCache rowHeights;
+        private int first = 0;
+        private int count = 0;
+        private int[] childTops = new int[16];
+        private int[] childBottoms = new int[16];
+        //offsets of visible positions in the new order from the top of the first child
+        private final PrefixSumTree destinationOffsets = new PrefixSumTree();
+        private int[] rowExtents = new int[16];
+
+        ListCellGeometry(ListView list, RowHeightCache rowHeights) {
+            this.list = list;
+            this.rowHeights = rowHeights;
+        }
+
+        @Override
+        public void cacheLayout() {
+            ListAdapter adapter = list.getAdapter();
+            first = list.getFirstVisiblePosition();
+            count = list.getChildCount();
+            if (childTops.length < count) {
+                childTops = new int[count];
+                childBottoms = new int[count];
+            }
+            for (int i = 0; i < count; i++) {
+                View child = list.getChildAt(i);
+                childTops[i] = child.getTop();
+                childBottoms[i] = child.getBottom();
+            }
+            int rows = Math.max(0, Math.min(count, adapter.getCount() - first));
+            if (rowExtents.length < rows) rowExtents = new int[rows];
+            for (int i = 0; i < rows; i++) {
+                rowExtents[i] = rowHeights.get(adapter.getItemId(first + i)) + list.getDividerHeight();
+            }
+            destinationOffsets.build(rowExtents, rows);
+        }
+
         @Override
-        public void onChanged() {
-            super.onChanged();
-			//a bit dirty hack but otherwise weird behaviour is observed
-			if (getChildCount() != 0) currentTopPos = getChildAt(0).getTop();
-			else currentTopPos = 0;
-            rearrangeViews(prepareMovementMap());
-            cacheIdOrder();
+        public void getSlotBounds(int position, Rect out) {
+            int left = list.getListPaddingLeft();
+            int right = list.getWidth() - list.getListPaddingRight();
+            int index = position - first;
+            if (index < 0) {
+                out.set(left, 0, right, 0);
+            }
+            else if (index >= count) {
+                out.set(left, list.getHeight(), right, list.getHeight());
+            }
+            else {
+                out.set(left, childTops[index], right, childBottoms[index]);
+            }
+        }
+
+        @Override
+        public void getDestinationBounds(int position, Rect out) {
+            int left = list.getListPaddingLeft();
+            int right = list.getWidth() - list.getListPaddingRight();
+            int height = rowHeights.get(list.getAdapter().getItemId(position));
+            int index = position - first;
+            if (index < 0) {
+                out.set(left, -height, right, 0);
+            }
+            else if (index >= count) {
+                out.set(left, list.getHeight(), right, list.getHeight() + height);
+            }
+            else {
+                int top = childTops[0] + destinationOffsets.prefixSum(index);
+                out.set(left, top, right, top + height);
+            }
+        }
+
+        @Override
+        public int estimateTop(int position) {
+            //rows between the position and the visible ones are taken from the height cache
+            ListAdapter adapter = list.getAdapter();
+            int first = list.getFirstVisiblePosition();
+            int top = list.getChildAt(0).getTop();
+            if (position < first) {
+                for (int i = position; i < first; i++) {
+                    top -= rowHeights.get(adapter.getItemId(i)) + list.getDividerHeight();
+                }
+            }
+            else {
+                for (int i = first; i < Math.min(position, adapter.getCount()); i++) {
+                    top += rowHeights.get(adapter.getItemId(i)) + list.getDividerHeight();
+                }
+            }
+            return top;
         }
     }
 }
@@ -0,0 +1,202 @@
+package com.rearrangeexample.widget;
+
+/**
+ * Timings of one animation of RearrangeListView, from the data set change to the last frame.
+ * Updates which retarget moving rows are merged into the animation they retarget.
+ * The same object is reused for every animation, so it should be read only from listener callbacks.
+ * Nothing is measured while the list has no listener
+ */
+public class RearrangeMetrics {
+
+    /**
+     * Receiver of metrics, called on the main thread
+     */
+    public interface Listener {
+        /**
+         * animation frame was drawn
+         * @param drawNanos time spent drawing the list
+         * @param frameIntervalNanos time since the previous animation frame, 0 for the first one
+         */
+        void onFrame(long drawNanos, long frameIntervalNanos);
+
+        /**
+         * animation finished
+         * @param metrics metrics of the whole animation
+         */
+        void onRearrangeFinished(RearrangeMetrics metrics);
+    }
+
+    //display refresh interval which dropped frames are counted against
+    public static final long FRAME_NANOS = 1000000000L / 60;
+
+    private int updates;
+    private long diffNanos;
+    private int movedCells;
+    private int visibleCells;
+    private int snapshots;
+    private long snapshotNanos;
+    private long snapshotBytes;
+    private long changedAt;
+    private long firstFrameLatencyNanos;
+    private int frames;
+    private int droppedFrames;
+    private long lastFrameAt;
+    private long lastFrameIntervalNanos;
+    private long maxFrameIntervalNanos;
+    private long drawNanos;
+    private long maxDrawNanos;
+
+    void reset() {
+        updates = 0;
+        diffNanos = 0;
+        movedCells = 0;
+        visibleCells = 0;
+        snapshots = 0;
+        snapshotNanos = 0;
+        snapshotBytes = 0;
+        changedAt = 0;
+        firstFrameLatencyNanos = 0;
+        frames = 0;
+        droppedFrames = 0;
+        lastFrameAt = 0;
+        lastFrameIntervalNanos = 0;
+        maxFrameIntervalNanos = 0;
+        drawNanos = 0;
+        maxDrawNanos = 0;
+    }
+
+    /**
+     * data set changed or rearrangement was requested, the first one starts the latency count
+     */
+    void onUpdate(long now) {
+        updates++;
+        if (changedAt == 0) changedAt = now;
+    }
+
+    void onDiff(long nanos) {
+        diffNanos += nanos;
+    }
+
+    void onCells(int moved, int visible) {
+        movedCells = moved;
+        visibleCells = visible;
+    }
+
+    void onSnapshot(long nanos, long allocatedBytes) {
+        snapshots++;
+        snapshotNanos += nanos;
+        snapshotBytes += allocatedBytes;
+    }
+
+    /**
+     * frame which took longer than one and a half intervals replaced the frames it skipped
+     * @param intervalNanos time since the previous frame
+     * @return number of frames skipped
+     */
+    static int droppedFrames(long intervalNanos) {
+        if (intervalNanos <= FRAME_NANOS + FRAME_NANOS / 2) return 0;
+        return (int) ((intervalNanos + FRAME_NANOS / 2) / FRAME_NANOS - 1);
+    }
+
+    void onAnimationFrame(long now) {
+        if (frames == 0) {
+            firstFrameLatencyNanos = changedAt == 0 ? 0 : now - changedAt;
+            lastFrameIntervalNanos = 0;
+        }
+        else {
+            lastFrameIntervalNanos = now - lastFrameAt;
+            maxFrameIntervalNanos = Math.max(maxFrameIntervalNanos, lastFrameIntervalNanos);
+            droppedFrames += droppedFrames(lastFrameIntervalNanos);
+        }
+        lastFrameAt = now;
+        frames++;
+    }
+
+    /**
+     * @return time spent drawing the list, frame interval of the last animation frame is available for the listener
+     */
+    long onDraw(long nanos) {
+        drawNanos += nanos;
+        maxDrawNanos = Math.max(maxDrawNanos, nanos);
+        return lastFrameIntervalNanos;
+    }
+
+    /**
+     * @return number of data set changes and rearrangements merged into the animation
+     */
+    public int getUpdates() {
+        return updates;
+    }
+
+    /**
+     * @return time spent computing diffs, on the worker thread in async mode
+     */
+    public long getDiffNanos() {
+        return diffNanos;
+    }
+
+    /**
+     * @return number of rows which got hover cells in the last update
+     */
+    public int getMovedCells() {
+        return movedCells;
+    }
+
+    /**
+     * @return number of visible rows in the last update
+     */
+    public int getVisibleCells() {
+        return visibleCells;
+    }
+
+    /**
+     * @return number of snapshots drawn for hover cells
+     */
+    public int getSnapshots() {
+        return snapshots;
+    }
+
+    /**
+     * @return time spent drawing snapshots of moving and removed rows
+     */
+    public long getSnapshotNanos() {
+        return snapshotNanos;
+    }
+
+    /**
+     * @return bytes of bitmaps allocated for snapshots, bitmaps taken from the pool are not counted
+     */
+    public long getSnapshotBytes() {
+        return snapshotBytes;
+    }
+
+    /**
+     * @return time from the first data set change to the first animation frame
+     */
+    public long getFirstFrameLatencyNanos() {
+        return firstFrameLatencyNanos;
+    }
+
+    public int getFrames() {
+        return frames;
+    }
+
+    public int getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    public long getMaxFrameIntervalNanos() {
+        return maxFrameIntervalNanos;
+    }
+
+    /**
+     * @return time spent drawing the list during the animation
+     */
+    public long getDrawNanos() {
+        return drawNanos;
+    }
+
+    public long getMaxDrawNanos() {
+        return maxDrawNanos;
+    }
+}
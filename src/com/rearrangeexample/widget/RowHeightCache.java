@@ -0,0 +1,101 @@
+package com.rearrangeexample.widget;
+
+/**
+ * Heights of rows by stable item ids, filled while the list is laid out.
+ * Rows which have never been laid out get the average height of laid out rows.
+ * Number of rows is capped, rows cached first are evicted first, so rows far from the visible ones go
+ * and the cache doesn't grow with the data set
+ */
+public class RowHeightCache {
+
+    public static final int DEFAULT_MAX_ROWS = 1024;
+
+    private final LongIntIndex heights = new LongIntIndex();
+    //ids in the order they were cached, ring of max rows which starts at oldest
+    private long[] order = new long[DEFAULT_MAX_ROWS];
+    private int oldest = 0;
+    //running sum of cached heights, each row counted once with its latest height
+    private long heightSum = 0;
+    private int estimate = 0;
+
+    /**
+     * @param id item id
+     * @param height height of the row laid out for the item
+     */
+    public void put(long id, int height) {
+        int previous = heights.get(id, -1);
+        if (previous == height) return;
+        if (previous == -1) {
+            if (heights.size() == order.length) evictOldest();
+            order[(oldest + heights.size()) % order.length] = id;
+            heightSum += height;
+        }
+        else {
+            heightSum += height - previous;
+        }
+        heights.put(id, height);
+        updateEstimate();
+    }
+
+    /**
+     * @param id item id
+     * @return cached height of the row, or estimate if it is unknown
+     */
+    public int get(long id) {
+        return heights.get(id, estimate);
+    }
+
+    /**
+     * @param id item id
+     * @return true if height of the row is known
+     */
+    public boolean contains(long id) {
+        return heights.get(id, -1) != -1;
+    }
+
+    /**
+     * @param maxRows number of rows to keep, rows cached first are evicted if there are more of them
+     */
+    public void setMaxRows(int maxRows) {
+        if (maxRows < 1) throw new IllegalArgumentException("Cache should keep at least one row");
+        while (heights.size() > maxRows) {
+            evictOldest();
+        }
+        long[] resized = new long[maxRows];
+        for (int i = 0; i < heights.size(); i++) {
+            resized[i] = order[(oldest + i) % order.length];
+        }
+        order = resized;
+        oldest = 0;
+        updateEstimate();
+    }
+
+    public int getMaxRows() {
+        return order.length;
+    }
+
+    /**
+     * @return number of cached rows
+     */
+    public int size() {
+        return heights.size();
+    }
+
+    public void clear() {
+        heights.reset(0);
+        oldest = 0;
+        heightSum = 0;
+        estimate = 0;
+    }
+
+    private void evictOldest() {
+        long id = order[oldest];
+        heightSum -= heights.get(id, 0);
+        heights.remove(id);
+        oldest = (oldest + 1) % order.length;
+    }
+
+    private void updateEstimate() {
+        estimate = heights.size() > 0 ? (int) (heightSum / heights.size()) : 0;
+    }
+}
@@ -0,0 +1,95 @@
+package com.rearrangeexample.widget;
+
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.Adapter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pool of row views grouped by adapter view type, used to bind moving rows off the screen
+ * without touching children of the list. Counts how many views adapter inflated and how many it rebound,
+ * so it can be checked that repeated rearrangements don't inflate anything
+ */
+public class ScrapViewPool {
+
+    public static final int DEFAULT_MAX_SCRAP_PER_TYPE = 32;
+
+    //scrap views per view type
+    private final List<List<View>> scrap = new ArrayList<List<View>>();
+    private int maxScrapPerType = DEFAULT_MAX_SCRAP_PER_TYPE;
+
+    private int inflations = 0;
+    private int rebinds = 0;
+
+    /**
+     * bind view for given position reusing a scrap view of the same type if there is one
+     * @param adapter adapter of the list
+     * @param position adapter position
+     * @param parent list the view will be drawn for
+     * @return view bound to the position, it should be given back with release() when it is not drawn anymore
+     */
+    public View bind(Adapter adapter, int position, ViewGroup parent) {
+        int viewType = adapter.getItemViewType(position);
+        View convertView = null;
+        if (viewType >= 0 && viewType < scrap.size()) {
+            List<View> views = scrap.get(viewType);
+            if (!views.isEmpty()) convertView = views.remove(views.size() - 1);
+        }
+        View view = adapter.getView(position, convertView, parent);
+        if (view == convertView) rebinds++;
+        else inflations++;
+        return view;
+    }
+
+    /**
+     * give a view back to the pool
+     * @param view view which was bound by bind()
+     * @param viewType adapter view type of the position it was bound to
+     */
+    public void release(View view, int viewType) {
+        if (view == null || viewType < 0) return;
+        while (scrap.size() <= viewType) {
+            scrap.add(new ArrayList<View>());
+        }
+        List<View> views = scrap.get(viewType);
+        if (views.size() < maxScrapPerType) views.add(view);
+    }
+
+    /**
+     * @param maxScrapPerType max number of views kept for one view type
+     */
+    public void setMaxScrapPerType(int maxScrapPerType) {
+        this.maxScrapPerType = maxScrapPerType;
+    }
+
+    /**
+     * drop all scrap views, e.g. when adapter and its view types are changed
+     */
+    public void clear() {
+        scrap.clear();
+    }
+
+    /**
+     * reset counters, the list does it when a new animation starts
+     */
+    public void resetCounters() {
+        inflations = 0;
+        rebinds = 0;
+    }
+
+    /**
+     * @return number of views inflated by adapter since counters were reset
+     */
+    public int getInflations() {
+        return inflations;
+    }
+
+    /**
+     * @return number of scrap views rebound by adapter since counters were reset
+     */
+    public int getRebinds() {
+        return rebinds;
+    }
+}
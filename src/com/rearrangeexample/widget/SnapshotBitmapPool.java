@@ -0,0 +1,191 @@
+package com.rearrangeexample.widget;
+
+import android.graphics.Bitmap;
+
+/**
+ * Pool of snapshot bitmaps grouped by their size, so bitmaps of moving rows can be reused between animations.
+ * When pooled bitmaps take more memory than allowed the least recently released ones are recycled.
+ * Pooled bitmaps sit in slots of primitive arrays linked into a list per size and a list in release order,
+ * so acquire, release and eviction take O(1) and box nothing
+ */
+public class SnapshotBitmapPool {
+
+    public static final long DEFAULT_MAX_BYTES = 16 * 1024 * 1024;
+
+    private static final int NONE = -1;
+
+    //size of bitmaps mapped to the most recently released slot of that size + 1, 0 for an empty bucket
+    private final LongIntIndex bucketHeads = new LongIntIndex();
+    private Bitmap[] bitmaps = new Bitmap[16];
+    private long[] sizeKeys = new long[16];
+    //slots of the same size, the most recently released first, free slots are chained through bucketNext
+    private int[] bucketNext = new int[16];
+    private int[] bucketPrev = new int[16];
+    //all pooled slots, the least recently released first
+    private int[] releaseNext = new int[16];
+    private int[] releasePrev = new int[16];
+    private int oldest = NONE;
+    private int newest = NONE;
+    private int freeSlot = NONE;
+    private int slotCount = 0;
+
+    private long maxBytes = DEFAULT_MAX_BYTES;
+    private long pooledBytes = 0;
+
+    private int hits = 0;
+    private int misses = 0;
+    private int evictions = 0;
+
+    /**
+     * get a transparent bitmap of given size, pooled one if possible
+     * @param width bitmap width
+     * @param height bitmap height
+     * @return bitmap which should be given back with release() when it is not drawn anymore
+     */
+    public Bitmap acquire(int width, int height) {
+        int slot = bucketHeads.get(key(width, height), 0) - 1;
+        if (slot != NONE) {
+            Bitmap bitmap = bitmaps[slot];
+            removeSlot(slot);
+            pooledBytes -= sizeOf(bitmap);
+            bitmap.eraseColor(0);
+            hits++;
+            return bitmap;
+        }
+        misses++;
+        return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * give a bitmap back to the pool
+     * @param bitmap bitmap which was acquired from the pool
+     */
+    public void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) return;
+        long size = sizeOf(bitmap);
+        if (size > maxBytes) {
+            bitmap.recycle();
+            evictions++;
+            return;
+        }
+        long key = key(bitmap.getWidth(), bitmap.getHeight());
+        int slot = takeFreeSlot();
+        bitmaps[slot] = bitmap;
+        sizeKeys[slot] = key;
+        //pushed to the front of its bucket
+        int head = bucketHeads.get(key, 0) - 1;
+        bucketPrev[slot] = NONE;
+        bucketNext[slot] = head;
+        if (head != NONE) bucketPrev[head] = slot;
+        bucketHeads.put(key, slot + 1);
+        //appended to the release order
+        releasePrev[slot] = newest;
+        releaseNext[slot] = NONE;
+        if (newest != NONE) releaseNext[newest] = slot;
+        else oldest = slot;
+        newest = slot;
+        pooledBytes += size;
+        trimTo(maxBytes);
+    }
+
+    /**
+     * set memory limit for pooled bitmaps, extra bitmaps are recycled immediately
+     * @param maxBytes max number of bytes pooled bitmaps may take
+     */
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        trimTo(maxBytes);
+    }
+
+    /**
+     * recycle all pooled bitmaps
+     */
+    public void clear() {
+        trimTo(0);
+        bucketHeads.reset(0);
+    }
+
+    public long getPooledBytes() {
+        return pooledBytes;
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    public int getMisses() {
+        return misses;
+    }
+
+    public int getEvictions() {
+        return evictions;
+    }
+
+    private void trimTo(long bytes) {
+        while (pooledBytes > bytes && oldest != NONE) {
+            Bitmap bitmap = bitmaps[oldest];
+            removeSlot(oldest);
+            pooledBytes -= sizeOf(bitmap);
+            bitmap.recycle();
+            evictions++;
+        }
+    }
+
+    /**
+     * unlink a slot from its bucket and from the release order and make it free
+     */
+    private void removeSlot(int slot) {
+        int next = bucketNext[slot];
+        int prev = bucketPrev[slot];
+        if (next != NONE) bucketPrev[next] = prev;
+        if (prev != NONE) bucketNext[prev] = next;
+        else bucketHeads.put(sizeKeys[slot], next + 1);
+
+        next = releaseNext[slot];
+        prev = releasePrev[slot];
+        if (next != NONE) releasePrev[next] = prev;
+        else newest = prev;
+        if (prev != NONE) releaseNext[prev] = next;
+        else oldest = next;
+
+        bitmaps[slot] = null;
+        bucketNext[slot] = freeSlot;
+        freeSlot = slot;
+    }
+
+    private int takeFreeSlot() {
+        if (freeSlot != NONE) {
+            int slot = freeSlot;
+            freeSlot = bucketNext[slot];
+            return slot;
+        }
+        if (slotCount == bitmaps.length) {
+            int capacity = slotCount * 2;
+            Bitmap[] biggerBitmaps = new Bitmap[capacity];
+            System.arraycopy(bitmaps, 0, biggerBitmaps, 0, slotCount);
+            bitmaps = biggerBitmaps;
+            long[] biggerKeys = new long[capacity];
+            System.arraycopy(sizeKeys, 0, biggerKeys, 0, slotCount);
+            sizeKeys = biggerKeys;
+            bucketNext = grow(bucketNext, capacity);
+            bucketPrev = grow(bucketPrev, capacity);
+            releaseNext = grow(releaseNext, capacity);
+            releasePrev = grow(releasePrev, capacity);
+        }
+        return slotCount++;
+    }
+
+    private static int[] grow(int[] array, int capacity) {
+        int[] bigger = new int[capacity];
+        System.arraycopy(array, 0, bigger, 0, array.length);
+        return bigger;
+    }
+
+    private static long sizeOf(Bitmap bitmap) {
+        return (long) bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    private static long key(int width, int height) {
+        return ((long) width << 32) | (height & 0xffffffffL);
+    }
+}
@@ -0,0 +1,150 @@
+package com.rearrangeexample.widget;
+
+import android.graphics.Bitmap;
+
+/**
+ * Snapshots of rows taken ahead of a rearrangement, keyed by item id and content version.
+ * A snapshot is handed over to a hover cell at most once, bitmaps which are dropped go back to the snapshot pool
+ */
+public class SnapshotCache {
+
+    private final SnapshotBitmapPool pool;
+    //item id mapped to the slot of its snapshot
+    private final LongIntIndex slots = new LongIntIndex();
+    private Bitmap[] bitmaps = new Bitmap[16];
+    private long[] versions = new long[16];
+    //next free slot after each free slot, slots are reused so their number doesn't grow with every item ever cached
+    private int[] nextFree = new int[16];
+    private int freeSlot = MovementDiff.POSITION_NONE;
+    private int slotCount = 0;
+    private int cachedCount = 0;
+
+    private int hits = 0;
+    private int misses = 0;
+
+    SnapshotCache(SnapshotBitmapPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * @param id item id
+     * @param version content version of the item
+     * @param bitmap snapshot of the item taken from the pool, replaces the previous one
+     */
+    void put(long id, long version, Bitmap bitmap) {
+        int slot = slots.get(id, MovementDiff.POSITION_NONE);
+        if (slot == MovementDiff.POSITION_NONE) {
+            slot = takeFreeSlot();
+            slots.put(id, slot);
+        }
+        else {
+            pool.release(bitmaps[slot]);
+            cachedCount--;
+        }
+        bitmaps[slot] = bitmap;
+        versions[slot] = version;
+        cachedCount++;
+    }
+
+    private int takeFreeSlot() {
+        if (freeSlot != MovementDiff.POSITION_NONE) {
+            int slot = freeSlot;
+            freeSlot = nextFree[slot];
+            return slot;
+        }
+        if (slotCount == bitmaps.length) {
+            Bitmap[] biggerBitmaps = new Bitmap[slotCount * 2];
+            long[] biggerVersions = new long[slotCount * 2];
+            int[] biggerNextFree = new int[slotCount * 2];
+            System.arraycopy(bitmaps, 0, biggerBitmaps, 0, slotCount);
+            System.arraycopy(versions, 0, biggerVersions, 0, slotCount);
+            bitmaps = biggerBitmaps;
+            versions = biggerVersions;
+            nextFree = biggerNextFree;
+        }
+        return slotCount++;
+    }
+
+    /**
+     * forget the item and give its slot to the next one
+     */
+    private void dropSlot(long id, int slot) {
+        slots.remove(id);
+        bitmaps[slot] = null;
+        nextFree[slot] = freeSlot;
+        freeSlot = slot;
+        cachedCount--;
+    }
+
+    /**
+     * @param id item id
+     * @param version current content version of the item
+     * @return snapshot which now belongs to the caller or null if there is no snapshot of this version
+     */
+    Bitmap take(long id, long version) {
+        int slot = slots.get(id, MovementDiff.POSITION_NONE);
+        if (slot == MovementDiff.POSITION_NONE || versions[slot] != version) {
+            misses++;
+            return null;
+        }
+        Bitmap bitmap = bitmaps[slot];
+        dropSlot(id, slot);
+        hits++;
+        return bitmap;
+    }
+
+    /**
+     * @return true if there is a snapshot of the item, whatever its version is
+     */
+    boolean contains(long id) {
+        int slot = slots.get(id, MovementDiff.POSITION_NONE);
+        return slot != MovementDiff.POSITION_NONE;
+    }
+
+    /**
+     * drop snapshot of the item, e.g. when its row is bound again
+     * @param id item id
+     */
+    void invalidate(long id) {
+        if (cachedCount == 0) return;
+        int slot = slots.get(id, MovementDiff.POSITION_NONE);
+        if (slot == MovementDiff.POSITION_NONE) return;
+        pool.release(bitmaps[slot]);
+        dropSlot(id, slot);
+    }
+
+    /**
+     * drop all snapshots
+     */
+    void clear() {
+        for (int i = 0; i < slotCount; i++) {
+            if (bitmaps[i] != null) pool.release(bitmaps[i]);
+            bitmaps[i] = null;
+        }
+        slotCount = 0;
+        freeSlot = MovementDiff.POSITION_NONE;
+        cachedCount = 0;
+        slots.reset(0);
+    }
+
+    /**
+     * @return number of snapshots waiting for a rearrangement
+     */
+    public int size() {
+        return cachedCount;
+    }
+
+    /**
+     * @return number of moving rows which got a prepared snapshot
+     */
+    public int getHits() {
+        return hits;
+    }
+
+    /**
+     * @return number of moving rows which had to be drawn when the rearrangement started
+     */
+    public int getMisses() {
+        return misses;
+    }
+}
@@ -0,0 +1,254 @@
+package com.rearrangeexample.widget;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+/**
+ * Scheduler which coalesces data set updates, so the list animates only to the latest order.
+ * Updates requested while views are moving or while waiting for the next dispatch are merged into one,
+ * dispatches are spaced by min interval and can be aligned to display frames.
+ * Should be used from the main thread only
+ */
+public class UpdateScheduler {
+
+    /**
+     * nothing is pending and views are not moving
+     */
+    public static final int STATE_IDLE = 0;
+    /**
+     * update is scheduled and waits for min interval or the next frame
+     */
+    public static final int STATE_WAITING = 1;
+    /**
+     * views are moving
+     */
+    public static final int STATE_ANIMATING = 2;
+    /**
+     * views are moving and an update will be scheduled when they stop
+     */
+    public static final int STATE_ANIMATING_PENDING = 3;
+    /**
+     * diff of the last update is computed in background, updates are held until it is applied
+     */
+    public static final int STATE_DIFFING = 4;
+    /**
+     * diff is computed in background and an update will be scheduled when it is applied
+     */
+    public static final int STATE_DIFFING_PENDING = 5;
+
+    private final Runnable target;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable dispatchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            dispatch();
+        }
+    };
+    private Object frameCallback;
+
+    private int state = STATE_IDLE;
+    private boolean animating = false;
+    private boolean holdWhileAnimating = true;
+    private long minInterval = 0;
+    private boolean frameAligned = false;
+    private long lastDispatchTime = 0;
+
+    private int requestedUpdates = 0;
+    private int appliedUpdates = 0;
+
+    /**
+     * @param target action which applies an update, e.g. notifies observers of the adapter
+     */
+    public UpdateScheduler(Runnable target) {
+        this.target = target;
+    }
+
+    /**
+     * request an update, it is applied right away only if nothing holds it,
+     * min interval has passed and frame alignment is off
+     */
+    public void requestUpdate() {
+        requestedUpdates++;
+        switch (state) {
+            case STATE_IDLE:
+                schedule();
+                break;
+            case STATE_ANIMATING:
+                if (holdWhileAnimating) state = STATE_ANIMATING_PENDING;
+                else schedule();
+                break;
+            case STATE_DIFFING:
+                state = STATE_DIFFING_PENDING;
+                break;
+            default:
+                //already pending, will be merged into it
+                break;
+        }
+    }
+
+    /**
+     * views started moving, updates are held until animationFinished() if hold while animating is on
+     */
+    public void animationStarted() {
+        animating = true;
+        if (state == STATE_WAITING && holdWhileAnimating) {
+            cancelScheduled();
+            state = STATE_ANIMATING_PENDING;
+        }
+        else if (state == STATE_IDLE) {
+            state = STATE_ANIMATING;
+        }
+    }
+
+    /**
+     * views stopped moving, held update is scheduled
+     */
+    public void animationFinished() {
+        animating = false;
+        if (state == STATE_ANIMATING_PENDING) {
+            state = STATE_IDLE;
+            schedule();
+        }
+        else if (state == STATE_ANIMATING) {
+            state = STATE_IDLE;
+        }
+    }
+
+    /**
+     * diff of the last update is being computed in background, updates are held until diffFinished()
+     */
+    public void diffStarted() {
+        if (state == STATE_WAITING) {
+            cancelScheduled();
+            state = STATE_DIFFING_PENDING;
+        }
+        else if (state == STATE_ANIMATING_PENDING) {
+            state = STATE_DIFFING_PENDING;
+        }
+        else if (state != STATE_DIFFING_PENDING) {
+            state = STATE_DIFFING;
+        }
+    }
+
+    /**
+     * diff was applied or cancelled, held update is scheduled unless moving views hold it
+     */
+    public void diffFinished() {
+        if (state == STATE_DIFFING) {
+            state = animating ? STATE_ANIMATING : STATE_IDLE;
+        }
+        else if (state == STATE_DIFFING_PENDING) {
+            if (animating && holdWhileAnimating) {
+                state = STATE_ANIMATING_PENDING;
+            }
+            else {
+                state = animating ? STATE_ANIMATING : STATE_IDLE;
+                schedule();
+            }
+        }
+    }
+
+    /**
+     * @param holdWhileAnimating false if the list can retarget moving views, so updates don't wait for them to stop
+     */
+    public void setHoldWhileAnimating(boolean holdWhileAnimating) {
+        this.holdWhileAnimating = holdWhileAnimating;
+    }
+
+    /**
+     * @param minInterval min time in ms between two applied updates
+     */
+    public void setMinInterval(long minInterval) {
+        this.minInterval = minInterval;
+    }
+
+    /**
+     * @param frameAligned true to apply updates at the start of a display frame, uses Choreographer since API 16
+     */
+    public void setFrameAligned(boolean frameAligned) {
+        this.frameAligned = frameAligned;
+    }
+
+    public int getState() {
+        return state;
+    }
+
+    /**
+     * @return true if a requested update hasn't reached the target yet or its diff is still computed
+     */
+    public boolean hasPendingUpdate() {
+        return state != STATE_IDLE && state != STATE_ANIMATING;
+    }
+
+    /**
+     * @return number of requested updates
+     */
+    public int getRequestedUpdates() {
+        return requestedUpdates;
+    }
+
+    /**
+     * @return number of updates which were actually applied
+     */
+    public int getAppliedUpdates() {
+        return appliedUpdates;
+    }
+
+    /**
+     * @return number of requested updates which were merged into other ones, pending update is counted too
+     */
+    public int getCoalescedUpdates() {
+        return requestedUpdates - appliedUpdates;
+    }
+
+    private void schedule() {
+        long delay = Math.max(0, lastDispatchTime + minInterval - SystemClock.uptimeMillis());
+        if (delay == 0 && !frameAligned) {
+            dispatch();
+            return;
+        }
+        state = STATE_WAITING;
+        if (frameAligned && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            postFrameCallback(delay);
+        }
+        else {
+            handler.postDelayed(dispatchRunnable, delay);
+        }
+    }
+
+    private void cancelScheduled() {
+        handler.removeCallbacks(dispatchRunnable);
+        if (frameCallback != null) {
+            removeFrameCallback();
+        }
+    }
+
+    private void dispatch() {
+        state = animating ? STATE_ANIMATING : STATE_IDLE;
+        appliedUpdates++;
+        lastDispatchTime = SystemClock.uptimeMillis();
+        target.run();
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void postFrameCallback(long delay) {
+        if (frameCallback == null) {
+            frameCallback = new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    dispatch();
+                }
+            };
+        }
+        Choreographer.getInstance().postFrameCallbackDelayed((Choreographer.FrameCallback) frameCallback, delay);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void removeFrameCallback() {
+        Choreographer.getInstance().removeFrameCallback((Choreographer.FrameCallback) frameCallback);
+    }
+}
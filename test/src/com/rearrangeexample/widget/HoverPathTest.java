@@ -0,0 +1,91 @@
+package com.rearrangeexample.widget;
+
+import com.rearrangeexample.benchmark.AllocationCounter;
+
+import static com.rearrangeexample.widget.TestSupport.assertEquals;
+
+/**
+ * Interpolation of hover cell bounds: start, midpoint and end of the path, and no allocations while it is driven
+ */
+public class HoverPathTest {
+
+    private static final int FRAMES = 30;
+
+    public static void main(String[] args) {
+        boundsAtStartMidpointAndEnd();
+        alphaFollowsFraction();
+        freezeStartsFromCurrentPoint();
+        framesDontAllocate();
+        System.out.println("HoverPathTest passed");
+    }
+
+    private static HoverPath downwardPath() {
+        HoverPath path = new HoverPath();
+        path.setStart(0, 100, 480, 196);
+        path.setEnd(0, 500, 480, 596);
+        return path;
+    }
+
+    private static void boundsAtStartMidpointAndEnd() {
+        HoverPath path = downwardPath();
+        path.setFraction(0f);
+        assertBounds("start", path, 0, 100, 480, 196);
+        path.setFraction(0.5f);
+        assertBounds("midpoint", path, 0, 300, 480, 396);
+        path.setFraction(1f);
+        assertBounds("end", path, 0, 500, 480, 596);
+    }
+
+    private static void alphaFollowsFraction() {
+        HoverPath path = downwardPath();
+        path.setAlphaRange(255, 0);
+        path.setFraction(0.5f);
+        assertEquals("alpha at midpoint", 127, path.getAlpha());
+        path.setFraction(1f);
+        assertEquals("alpha at end", 0, path.getAlpha());
+    }
+
+    private static void freezeStartsFromCurrentPoint() {
+        HoverPath path = downwardPath();
+        path.setFraction(0.5f);
+        path.freeze();
+        path.setEnd(0, 0, 480, 96);
+        path.setFraction(0f);
+        assertBounds("retargeted start", path, 0, 300, 480, 396);
+        path.setFraction(0.5f);
+        assertBounds("retargeted midpoint", path, 0, 150, 480, 246);
+    }
+
+    private static void framesDontAllocate() {
+        HoverPath path = downwardPath();
+        path.setAlphaRange(255, 0);
+        //warm up, so class loading and compilation are not counted
+        for (int i = 0; i < 100000; i++) {
+            drive(path);
+        }
+        long overhead = AllocationCounter.overhead();
+        long start = AllocationCounter.allocatedBytes();
+        for (int i = 0; i < 1000; i++) {
+            drive(path);
+        }
+        long allocated = AllocationCounter.allocatedBytes() - start - overhead;
+        assertEquals("bytes allocated by " + 1000 * FRAMES + " frames", 0, allocated);
+        assertBounds("end after frames", path, 0, 500, 480, 596);
+    }
+
+    /**
+     * one animation of the path frame by frame
+     */
+    private static void drive(HoverPath path) {
+        for (int frame = 0; frame <= FRAMES; frame++) {
+            path.setFraction((float) frame / FRAMES);
+        }
+    }
+
+    private static void assertBounds(String message, HoverPath path, int left, int top, int right, int bottom) {
+        assertEquals(message + " left", left, path.getLeft());
+        assertEquals(message + " top", top, path.getTop());
+        assertEquals(message + " right", right, path.getRight());
+        assertEquals(message + " bottom", bottom, path.getBottom());
+    }
+}
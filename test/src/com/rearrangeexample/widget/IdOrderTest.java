@@ -0,0 +1,98 @@
+package com.rearrangeexample.widget;
+
+import static com.rearrangeexample.widget.TestSupport.assertEquals;
+import static com.rearrangeexample.widget.TestSupport.assertTrue;
+
+/**
+ * Cached order of ids against the adapter order, in the sequences the core drives it through
+ */
+public class IdOrderTest {
+
+    public static void main(String[] args) {
+        permuteFollowsAdapter();
+        permuteWithHeldReadIsRefused();
+        applyChangesDetectsUnreportedChange();
+        System.out.println("IdOrderTest passed");
+    }
+
+    private static void permuteFollowsAdapter() {
+        long[] data = {10, 11, 12, 13};
+        IdOrder order = new IdOrder();
+        order.cache(source(data), 0, data.length);
+        int[] newIndexOfOld = {3, 0, 1, 2};
+        permute(data, newIndexOfOld);
+        assertTrue("permutation of a committed order", order.permute(newIndexOfOld));
+        assertOrder(data, order);
+    }
+
+    /**
+     * diff of an update is in flight when a permutation supersedes it: the cached order is older than the adapter,
+     * so permuting it would lose the held update
+     */
+    private static void permuteWithHeldReadIsRefused() {
+        long[] data = {10, 11, 12, 13};
+        IdOrder order = new IdOrder();
+        order.cache(source(data), 0, data.length);
+        //held update reverses the data, its order is read and handed to the diff
+        data = new long[]{13, 12, 11, 10};
+        order.read(source(data), 0, data.length);
+        //permutation cancels the diff, which may still read the buffer
+        order.releaseReadBuffer();
+        int[] newIndexOfOld = {1, 2, 3, 0};
+        permute(data, newIndexOfOld);
+        assertTrue("read order is pending", order.isReadPending());
+        assertTrue("permutation of a stale order", !order.permute(newIndexOfOld));
+        order.cache(source(data), 0, data.length);
+        assertOrder(data, order);
+        //committed order is permuted again
+        permute(data, newIndexOfOld);
+        assertTrue("permutation after the order is read again", order.permute(newIndexOfOld));
+        assertOrder(data, order);
+    }
+
+    private static void applyChangesDetectsUnreportedChange() {
+        long[] data = {10, 11, 12};
+        IdOrder order = new IdOrder();
+        order.cache(source(data), 0, data.length);
+        ItemChangeLog changeLog = new ItemChangeLog();
+        changeLog.addRemove(0, 1);
+        //adapter lost two items, only one was reported
+        data = new long[]{12};
+        assertTrue("changes which don't match the adapter", !order.applyChanges(changeLog, source(data)));
+        changeLog.clear();
+        order.cache(source(data), 0, data.length);
+        data = new long[]{12, 14};
+        changeLog.addInsert(1, 1);
+        assertTrue("reported insert", order.applyChanges(changeLog, source(data)));
+        assertOrder(data, order);
+    }
+
+    private static void permute(long[] data, int[] newIndexOfOld) {
+        long[] old = data.clone();
+        for (int i = 0; i < old.length; i++) {
+            data[newIndexOfOld[i]] = old[i];
+        }
+    }
+
+    private static void assertOrder(long[] data, IdOrder order) {
+        assertEquals("cached count", data.length, order.getCount());
+        assertEquals("cached start", 0, order.getStart());
+        for (int i = 0; i < data.length; i++) {
+            assertEquals("cached id at " + i, data[i], order.getIds()[i]);
+        }
+    }
+
+    private static MovementDiff.IdSource source(final long[] data) {
+        return new MovementDiff.IdSource() {
+            @Override
+            public int getCount() {
+                return data.length;
+            }
+
+            @Override
+            public long getItemId(int position) {
+                return data[position];
+            }
+        };
+    }
+}
@@ -0,0 +1,234 @@
+package com.rearrangeexample.widget;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.rearrangeexample.widget.TestSupport.assertEquals;
+import static com.rearrangeexample.widget.TestSupport.assertTrue;
+
+/**
+ * Change log against a list of ids changed the same way: positions are mapped both ways, cached ids follow
+ * the changes, and a log over the limit falls back to the full diff
+ */
+public class ItemChangeLogTest {
+
+    private static final int NONE = MovementDiff.POSITION_NONE;
+
+    public static void main(String[] args) {
+        moveMapsPositions();
+        insertAndRemoveMapPositions();
+        applyToReadsOnlyInsertedIds();
+        tooManyChangesFallBackToFull();
+        computeChangesFollowsLog();
+        randomChangesMatchList();
+        System.out.println("ItemChangeLogTest passed");
+    }
+
+    private static void moveMapsPositions() {
+        ItemChangeLog log = new ItemChangeLog();
+        //items 2 and 3 go after item 7
+        log.addMove(2, 6, 2);
+        int[] expected = {0, 1, 6, 7, 2, 3, 4, 5, 8, 9};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("forward " + i, expected[i], log.mapForward(i));
+            assertEquals("backward " + expected[i], i, log.mapBackward(expected[i]));
+            assertEquals("moved " + i, i == 2 || i == 3 ? 1 : 0, log.isMoved(i) ? 1 : 0);
+        }
+        assertEquals("count delta of a move", 0, log.getCountDelta());
+    }
+
+    private static void insertAndRemoveMapPositions() {
+        ItemChangeLog log = new ItemChangeLog();
+        log.addInsert(3, 2);
+        log.addRemove(0, 1);
+        //0 is removed, 1 and 2 go up by one, the rest goes down by one
+        int[] expected = {NONE, 0, 1, 4, 5};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("forward " + i, expected[i], log.mapForward(i));
+        }
+        assertEquals("backward of inserted 2", NONE, log.mapBackward(2));
+        assertEquals("backward of inserted 3", NONE, log.mapBackward(3));
+        assertEquals("backward 4", 3, log.mapBackward(4));
+        assertEquals("inserted items", 2, log.getInsertedItems());
+        assertEquals("count delta", 1, log.getCountDelta());
+    }
+
+    private static void applyToReadsOnlyInsertedIds() {
+        final List<Long> model = list(0, 1, 2, 3, 4);
+        ItemChangeLog log = new ItemChangeLog();
+        model.add(1, 100L);
+        log.addInsert(1, 1);
+        move(model, 3, 0, 2);
+        log.addMove(3, 0, 2);
+        model.remove(5);
+        log.addRemove(5, 1);
+        long[] ids = new long[5 + log.getInsertedItems()];
+        for (int i = 0; i < 5; i++) {
+            ids[i] = i;
+        }
+        final int[] reads = {0};
+        int count = log.applyTo(ids, 5, new MovementDiff.IdSource() {
+            @Override
+            public int getCount() {
+                return model.size();
+            }
+
+            @Override
+            public long getItemId(int position) {
+                reads[0]++;
+                return model.get(position);
+            }
+        });
+        assertIds(model, ids, count);
+        assertEquals("ids read from source", 1, reads[0]);
+    }
+
+    private static void tooManyChangesFallBackToFull() {
+        ItemChangeLog log = new ItemChangeLog();
+        assertTrue("new log is empty", log.isEmpty());
+        log.setMaxChanges(2);
+        log.addInsert(0, 1);
+        log.addMove(0, 3, 1);
+        assertTrue("log at the limit is incremental", log.isIncremental());
+        log.addRemove(1, 1);
+        assertTrue("log over the limit is incremental", !log.isIncremental());
+        assertTrue("log over the limit is empty", !log.isEmpty());
+        assertEquals("changes of a full log", 0, log.size());
+        //changes after the fallback aren't logged, the full diff covers them
+        log.addInsert(0, 1);
+        assertTrue("full log became incremental", !log.isIncremental());
+        log.clear();
+        assertTrue("cleared log is empty", log.isEmpty());
+        log.addInsert(0, 1);
+        assertTrue("log after clear is incremental", log.isIncremental());
+    }
+
+    private static void computeChangesFollowsLog() {
+        ItemChangeLog log = new ItemChangeLog();
+        log.addMove(6, 1, 1);
+        log.addInsert(0, 1);
+        MovementDiff diff = new MovementDiff();
+        diff.computeChanges(log, 0, 8, 0, 9);
+        //new item at 0 comes from nowhere, moved item goes to 2, items 1..5 are shifted by two, 0 and 7 by one
+        assertEquals("inserted items", 1, diff.getInsertedCount());
+        assertEquals("inserted position", 0, diff.getInserted(0));
+        assertEquals("moves of all changed items", 9, diff.size());
+        assertEquals("shifts of all changed items", 0, diff.getShiftCount());
+        assertFollowsLog(log, diff);
+
+        diff.setStrategy(MovementDiff.STRATEGY_MINIMAL_MOVES);
+        diff.computeChanges(log, 0, 8, 0, 9);
+        assertEquals("moves of minimal moves", 1, diff.size());
+        assertEquals("moved item from", 6, diff.getFrom(0));
+        assertEquals("moved item to", 2, diff.getTo(0));
+        assertEquals("shifts of minimal moves", 7, diff.getShiftCount());
+        assertFollowsLog(log, diff);
+    }
+
+    private static void randomChangesMatchList() {
+        Random random = new Random(42);
+        for (int round = 0; round < 2000; round++) {
+            int initial = random.nextInt(30);
+            List<Long> model = new ArrayList<Long>();
+            for (int i = 0; i < initial; i++) {
+                model.add((long) i);
+            }
+            long nextId = initial;
+            ItemChangeLog log = new ItemChangeLog();
+            int changes = 1 + random.nextInt(10);
+            for (int c = 0; c < changes; c++) {
+                int size = model.size();
+                int type = size == 0 ? 0 : random.nextInt(3);
+                if (type == 0) {
+                    int position = random.nextInt(size + 1);
+                    int count = 1 + random.nextInt(3);
+                    for (int i = 0; i < count; i++) {
+                        model.add(position + i, nextId++);
+                    }
+                    log.addInsert(position, count);
+                }
+                else if (type == 1) {
+                    int position = random.nextInt(size);
+                    int count = 1 + random.nextInt(size - position);
+                    for (int i = 0; i < count; i++) {
+                        model.remove(position);
+                    }
+                    log.addRemove(position, count);
+                }
+                else {
+                    int from = random.nextInt(size);
+                    int count = 1 + random.nextInt(size - from);
+                    int to = random.nextInt(size - count + 1);
+                    move(model, from, to, count);
+                    log.addMove(from, to, count);
+                }
+            }
+            String changed = "round " + round + ": " + model;
+            for (int i = 0; i < initial; i++) {
+                int index = model.indexOf((long) i);
+                assertEquals("forward " + i + " in " + changed, index, log.mapForward(i));
+            }
+            for (int i = 0; i < model.size(); i++) {
+                long id = model.get(i);
+                assertEquals("backward " + i + " in " + changed, id < initial ? (int) id : NONE, log.mapBackward(i));
+            }
+            long[] ids = new long[initial + log.getInsertedItems()];
+            for (int i = 0; i < initial; i++) {
+                ids[i] = i;
+            }
+            assertIds(model, ids, log.applyTo(ids, initial, source(model)));
+            assertEquals("count delta in " + changed, model.size() - initial, log.getCountDelta());
+        }
+    }
+
+    /**
+     * every item which changed position is reported by the diff from its old position to its new one
+     */
+    private static void assertFollowsLog(ItemChangeLog log, MovementDiff diff) {
+        for (int i = 0; i < diff.size(); i++) {
+            int from = diff.getFrom(i);
+            if (from == NONE) assertEquals("inserted at " + diff.getTo(i), NONE, log.mapBackward(diff.getTo(i)));
+            else assertEquals("move of " + from, log.mapForward(from), diff.getTo(i));
+        }
+        for (int i = 0; i < diff.getShiftCount(); i++) {
+            assertEquals("shift of " + diff.getShiftFrom(i), log.mapForward(diff.getShiftFrom(i)), diff.getShiftTo(i));
+            assertTrue("shifted item " + diff.getShiftFrom(i) + " was moved", !log.isMoved(diff.getShiftFrom(i)));
+        }
+    }
+
+    private static void assertIds(List<Long> model, long[] ids, int count) {
+        assertEquals("count of ids", model.size(), count);
+        for (int i = 0; i < count; i++) {
+            assertEquals("id at " + i + " of " + model, model.get(i), ids[i]);
+        }
+    }
+
+    private static void move(List<Long> model, int from, int to, int count) {
+        List<Long> moved = new ArrayList<Long>(model.subList(from, from + count));
+        model.subList(from, from + count).clear();
+        model.addAll(to, moved);
+    }
+
+    private static List<Long> list(long... ids) {
+        List<Long> list = new ArrayList<Long>();
+        for (long id : ids) {
+            list.add(id);
+        }
+        return list;
+    }
+
+    private static MovementDiff.IdSource source(final List<Long> model) {
+        return new MovementDiff.IdSource() {
+            @Override
+            public int getCount() {
+                return model.size();
+            }
+
+            @Override
+            public long getItemId(int position) {
+                return model.get(position);
+            }
+        };
+    }
+}
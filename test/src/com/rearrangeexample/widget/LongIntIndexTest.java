@@ -0,0 +1,65 @@
+package com.rearrangeexample.widget;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static com.rearrangeexample.widget.TestSupport.assertEquals;
+
+/**
+ * Index against a HashMap: random puts and removes which collide a lot, keys must stay reachable after removals
+ */
+public class LongIntIndexTest {
+
+    private static final int MISSING = -1;
+
+    public static void main(String[] args) {
+        removeKeepsProbeRunsReachable();
+        randomOperationsMatchMap();
+        System.out.println("LongIntIndexTest passed");
+    }
+
+    private static void removeKeepsProbeRunsReachable() {
+        LongIntIndex index = new LongIntIndex();
+        for (int i = 0; i < 7; i++) {
+            index.put(i, i);
+        }
+        index.remove(3);
+        index.remove(3);
+        assertEquals("size after removal", 6, index.size());
+        assertEquals("removed key", MISSING, index.get(3, MISSING));
+        for (int i = 0; i < 7; i++) {
+            if (i != 3) assertEquals("key " + i, i, index.get(i, MISSING));
+        }
+    }
+
+    private static void randomOperationsMatchMap() {
+        Random random = new Random(42);
+        LongIntIndex index = new LongIntIndex();
+        Map<Long, Integer> model = new HashMap<Long, Integer>();
+        for (int i = 0; i < 200000; i++) {
+            //few distinct keys, so runs are long and removals often shift them
+            long key = random.nextInt(64) * 1024L;
+            int operation = random.nextInt(4);
+            if (operation == 0) {
+                index.remove(key);
+                model.remove(key);
+            }
+            else if (operation == 1) {
+                int value = random.nextInt(1000);
+                index.put(key, value);
+                model.put(key, value);
+            }
+            else if (operation == 2 && random.nextInt(1000) == 0) {
+                index.reset(random.nextInt(64));
+                model.clear();
+            }
+            Integer expected = model.get(key);
+            assertEquals("value of " + key + " at step " + i, expected == null ? MISSING : expected, index.get(key, MISSING));
+            assertEquals("size at step " + i, model.size(), index.size());
+        }
+        for (Map.Entry<Long, Integer> entry : model.entrySet()) {
+            assertEquals("value of " + entry.getKey(), entry.getValue(), index.get(entry.getKey(), MISSING));
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.rearrangeexample.widget;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.rearrangeexample.widget.TestSupport.assertEquals;
+import static com.rearrangeexample.widget.TestSupport.assertTrue;
+
+/**
+ * Windowed diffs: items which enter the window from outside of it have to come from a position, not POSITION_NONE.
+ * Permutations: only moved items are reported and arrays which aren't permutations are rejected.
+ * Minimal moves: only items out of the longest increasing run of old positions move, others are shifts
+ */
+public class MovementDiffTest {
+
+    public static void main(String[] args) {
+        enteringTopWindowFromAbove();
+        enteringWindowFromAbove();
+        enteringWindowFromBelow();
+        permutationReportsMovedItems();
+        permutationRejectsNonPermutations();
+        minimalMovesMoveOneItem();
+        minimalMovesIgnoreInsertsAndRemovals();
+        minimalMovesBreakTiesTheSameWay();
+        minimalMovesOfRandomPermutations();
+        System.out.println("MovementDiffTest passed");
+    }
+
+    /**
+     * window at the top of the list has no positions above it, entering items still have to move
+     */
+    private static void enteringTopWindowFromAbove() {
+        long[] order = ids(10000);
+        long[] oldWindow = window(order, 0, 10);
+        //two items from far below are moved to the top
+        moveToTop(order, 5000, 2);
+        MovementDiff diff = new MovementDiff();
+        diff.computeWindow(oldWindow, 0, 10, window(order, 0, 10), 0, 10, source(order), 0);
+        assertEquals("inserted items", 0, diff.getInsertedCount());
+        assertEquals("old position of item at 0", MovementDiff.POSITION_ABOVE, fromOf(diff, 0));
+        assertEquals("old position of item at 1", MovementDiff.POSITION_ABOVE, fromOf(diff, 1));
+        assertEquals("old position of item at 2", 0, fromOf(diff, 2));
+    }
+
+    private static void enteringWindowFromAbove() {
+        long[] order = ids(10000);
+        long[] oldWindow = window(order, 100, 10);
+        moveTo(order, 5000, 100);
+        MovementDiff diff = new MovementDiff();
+        diff.computeWindow(oldWindow, 100, 10, window(order, 100, 10), 100, 10, source(order), 0);
+        assertEquals("old position of item at 100", 99, fromOf(diff, 100));
+    }
+
+    private static void enteringWindowFromBelow() {
+        long[] order = ids(10000);
+        long[] oldWindow = window(order, 0, 10);
+        moveTo(order, 5000, 8);
+        MovementDiff diff = new MovementDiff();
+        diff.computeWindow(oldWindow, 0, 10, window(order, 0, 10), 0, 10, source(order), 0);
+        assertEquals("old position of item at 8", 10, fromOf(diff, 8));
+    }
+
+    private static void permutationReportsMovedItems() {
+        //items 1 and 4 swap places, so do 2 and 3, 0 and 5 stay
+        int[] newIndexOfOld = {0, 4, 3, 2, 1, 5};
+        MovementDiff diff = new MovementDiff();
+        diff.computePermutation(newIndexOfOld, 6);
+        assertEquals("moved items", 4, diff.size());
+        for (int i = 0; i < diff.size(); i++) {
+            int from = diff.getFrom(i);
+            assertTrue("unmoved item " + from + " is reported", from != 0 && from != 5);
+            assertEquals("new position of item " + from, newIndexOfOld[from], diff.getTo(i));
+        }
+        diff.computePermutation(new int[]{0, 1, 2}, 3);
+        assertEquals("moved items of identity", 0, diff.size());
+    }
+
+    private static void permutationRejectsNonPermutations() {
+        MovementDiff diff = new MovementDiff();
+        int[][] invalid = {{0, 0, 1}, {0, 1, 3}, {-1, 0, 1}, {2, 1, 2}};
+        for (int[] newIndexOfOld : invalid) {
+            diff.computePermutation(new int[]{1, 0, 2}, 3);
+            try {
+                diff.computePermutation(newIndexOfOld, 3);
+                throw new AssertionError("accepted " + Arrays.toString(newIndexOfOld));
+            }
+            catch (IllegalArgumentException expected) {
+                //movements of the previous permutation don't leak into the rejected one
+                assertEquals("movements after rejection", 0, diff.size());
+            }
+        }
+    }
+
+    private static void minimalMovesMoveOneItem() {
+        long[] order = ids(10);
+        moveTo(order, 7, 2);
+        MovementDiff diff = new MovementDiff();
+        diff.setStrategy(MovementDiff.STRATEGY_MINIMAL_MOVES);
+        diff.compute(ids(10), 10, order, 10);
+        assertEquals("moved items", 1, diff.size());
+        assertEquals("old position of the moved item", 7, diff.getFrom(0));
+        assertEquals("new position of the moved item", 2, diff.getTo(0));
+        //items between the old and the new position are shifted down by one, others keep their places
+        assertEquals("shifted items", 5, diff.getShiftCount());
+        for (int i = 0; i < diff.getShiftCount(); i++) {
+            assertEquals("shift of item " + diff.getShiftFrom(i), diff.getShiftFrom(i) + 1, diff.getShiftTo(i));
+        }
+    }
+
+    private static void minimalMovesIgnoreInsertsAndRemovals() {
+        long[] oldIds = {0, 1, 2, 3};
+        long[] newIds = {9, 0, 2, 3};
+        MovementDiff diff = new MovementDiff();
+        diff.setStrategy(MovementDiff.STRATEGY_MINIMAL_MOVES);
+        diff.compute(oldIds, 4, newIds, 4);
+        assertEquals("moved items", 0, diff.size());
+        assertEquals("shifted items", 1, diff.getShiftCount());
+        assertEquals("inserted items", 1, diff.getInsertedCount());
+        assertEquals("removed items", 1, diff.getRemovedCount());
+        assertEquals("removed position", 1, diff.getRemoved(0));
+    }
+
+    /**
+     * two halves swap places, either half is a longest run. The one which ends up last stays,
+     * by ids and by permutation alike
+     */
+    private static void minimalMovesBreakTiesTheSameWay() {
+        long[] newIds = {2, 3, 0, 1};
+        MovementDiff diff = new MovementDiff();
+        diff.setStrategy(MovementDiff.STRATEGY_MINIMAL_MOVES);
+        diff.compute(ids(4), 4, newIds, 4);
+        assertEquals("moved items", 2, diff.size());
+        assertEquals("moved item to 0", 2, fromOf(diff, 0));
+        assertEquals("moved item to 1", 3, fromOf(diff, 1));
+        assertEquals("shifted items", 2, diff.getShiftCount());
+        diff.computePermutation(new int[]{2, 3, 0, 1}, 4);
+        assertEquals("moved items of permutation", 2, diff.size());
+        assertEquals("moved item to 0 by permutation", 2, fromOf(diff, 0));
+        assertEquals("moved item to 1 by permutation", 3, fromOf(diff, 1));
+    }
+
+    private static void minimalMovesOfRandomPermutations() {
+        Random random = new Random(42);
+        MovementDiff diff = new MovementDiff();
+        diff.setStrategy(MovementDiff.STRATEGY_MINIMAL_MOVES);
+        for (int round = 0; round < 500; round++) {
+            int count = 1 + random.nextInt(40);
+            long[] order = ids(count);
+            for (int i = count - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                long id = order[i];
+                order[i] = order[j];
+                order[j] = id;
+            }
+            diff.compute(ids(count), count, order, count);
+            String permutation = Arrays.toString(order);
+            //items off the longest run move, unless they happen to keep their positions
+            assertTrue("more moves than items off the longest run in " + permutation,
+                    diff.size() <= count - longestRun(order));
+            int unchanged = 0;
+            for (int i = 0; i < count; i++) {
+                if (order[i] == i) unchanged++;
+            }
+            assertEquals("moved, shifted and unchanged items of " + permutation,
+                    count, diff.size() + diff.getShiftCount() + unchanged);
+            //shifted items are on the run, so they keep their relative order
+            for (int i = 1; i < diff.getShiftCount(); i++) {
+                assertTrue("shifted items are out of order in " + permutation,
+                        diff.getShiftFrom(i - 1) < diff.getShiftFrom(i) && diff.getShiftTo(i - 1) < diff.getShiftTo(i));
+            }
+        }
+    }
+
+    /**
+     * @return length of the longest increasing subsequence, quadratic reference
+     */
+    private static int longestRun(long[] order) {
+        int[] lengths = new int[order.length];
+        int longest = 0;
+        for (int i = 0; i < order.length; i++) {
+            lengths[i] = 1;
+            for (int j = 0; j < i; j++) {
+                if (order[j] < order[i]) lengths[i] = Math.max(lengths[i], lengths[j] + 1);
+            }
+            longest = Math.max(longest, lengths[i]);
+        }
+        return longest;
+    }
+
+    /**
+     * @return old position of the move to given position
+     * @throws AssertionError if there is no such move
+     */
+    private static int fromOf(MovementDiff diff, int to) {
+        for (int i = 0; i < diff.size(); i++) {
+            if (diff.getTo(i) == to) {
+                assertTrue("move to " + to + " starts at POSITION_NONE", diff.getFrom(i) != MovementDiff.POSITION_NONE);
+                return diff.getFrom(i);
+            }
+        }
+        throw new AssertionError("no move to " + to);
+    }
+
+    private static long[] ids(int count) {
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = i;
+        }
+        return ids;
+    }
+
+    private static long[] window(long[] order, int start, int count) {
+        long[] window = new long[count];
+        System.arraycopy(order, start, window, 0, count);
+        return window;
+    }
+
+    private static void moveToTop(long[] order, int from, int count) {
+        long[] moved = window(order, from, count);
+        System.arraycopy(order, 0, order, count, from);
+        System.arraycopy(moved, 0, order, 0, count);
+    }
+
+    private static void moveTo(long[] order, int from, int to) {
+        long id = order[from];
+        System.arraycopy(order, to, order, to + 1, from - to);
+        order[to] = id;
+    }
+
+    private static MovementDiff.IdSource source(final long[] order) {
+        return new MovementDiff.IdSource() {
+            @Override
+            public int getCount() {
+                return order.length;
+            }
+
+            @Override
+            public long getItemId(int position) {
+                return order[position];
+            }
+        };
+    }
+}
@@ -0,0 +1,68 @@
+package com.rearrangeexample.widget;
+
+import java.util.Random;
+
+import static com.rearrangeexample.widget.TestSupport.assertEquals;
+
+/**
+ * Tree against a plain array: sums, lookups of offsets and single value updates
+ */
+public class PrefixSumTreeTest {
+
+    public static void main(String[] args) {
+        indexOfFindsRowAtOffset();
+        randomUpdatesMatchArray();
+        System.out.println("PrefixSumTreeTest passed");
+    }
+
+    private static void indexOfFindsRowAtOffset() {
+        PrefixSumTree tree = new PrefixSumTree();
+        //rows of 10, 0, 30 and 20 pixels, the empty row never contains an offset
+        tree.build(new int[]{10, 0, 30, 20}, 4);
+        assertEquals("sum of none", 0, tree.prefixSum(0));
+        assertEquals("sum of all", 60, tree.prefixSum(4));
+        assertEquals("sum over size", 60, tree.prefixSum(10));
+        assertEquals("row at 0", 0, tree.indexOf(0));
+        assertEquals("row at 9", 0, tree.indexOf(9));
+        assertEquals("row at 10", 2, tree.indexOf(10));
+        assertEquals("row at 39", 2, tree.indexOf(39));
+        assertEquals("row at 40", 3, tree.indexOf(40));
+        assertEquals("row past the end", 4, tree.indexOf(60));
+        tree.build(new int[0], 0);
+        assertEquals("row of empty tree", 0, tree.indexOf(0));
+    }
+
+    private static void randomUpdatesMatchArray() {
+        Random random = new Random(42);
+        PrefixSumTree tree = new PrefixSumTree();
+        for (int round = 0; round < 200; round++) {
+            int size = 1 + random.nextInt(100);
+            int[] values = new int[size];
+            for (int i = 0; i < size; i++) {
+                values[i] = random.nextInt(50);
+            }
+            tree.build(values, size);
+            for (int update = 0; update < 20; update++) {
+                int index = random.nextInt(size);
+                values[index] = random.nextInt(50);
+                tree.set(index, values[index]);
+                int sum = 0;
+                for (int i = 0; i <= size; i++) {
+                    assertEquals("sum of " + i + " values", sum, tree.prefixSum(i));
+                    if (i < size) {
+                        assertEquals("value " + i, values[i], tree.get(i));
+                        sum += values[i];
+                    }
+                }
+                int offset = random.nextInt(sum + 1);
+                int expected = 0;
+                int covered = 0;
+                while (expected < size && covered + values[expected] <= offset) {
+                    covered += values[expected];
+                    expected++;
+                }
+                assertEquals("row at offset " + offset, expected, tree.indexOf(offset));
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.rearrangeexample.widget;
+
+import static com.rearrangeexample.widget.TestSupport.assertEquals;
+import static com.rearrangeexample.widget.TestSupport.assertTrue;
+
+/**
+ * Heights and their estimate, and eviction of rows cached first once the cache is full
+ */
+public class RowHeightCacheTest {
+
+    public static void main(String[] args) {
+        unknownRowsGetAverage();
+        fullCacheEvictsOldestRows();
+        shrinkKeepsNewestRows();
+        System.out.println("RowHeightCacheTest passed");
+    }
+
+    private static void unknownRowsGetAverage() {
+        RowHeightCache cache = new RowHeightCache();
+        assertEquals("estimate of empty cache", 0, cache.get(1));
+        cache.put(1, 10);
+        cache.put(2, 30);
+        assertEquals("cached height", 10, cache.get(1));
+        assertEquals("estimate", 20, cache.get(3));
+        assertTrue("unknown row is cached", !cache.contains(3));
+        //new height of a cached row replaces the old one in the estimate
+        cache.put(1, 50);
+        assertEquals("estimate after update", 40, cache.get(3));
+        assertEquals("rows after update", 2, cache.size());
+        cache.clear();
+        assertEquals("estimate after clear", 0, cache.get(1));
+    }
+
+    private static void fullCacheEvictsOldestRows() {
+        RowHeightCache cache = new RowHeightCache();
+        cache.setMaxRows(3);
+        for (int id = 0; id < 10; id++) {
+            cache.put(id, id * 10);
+        }
+        assertEquals("rows of full cache", 3, cache.size());
+        for (int id = 0; id < 7; id++) {
+            assertTrue("evicted row " + id, !cache.contains(id));
+        }
+        for (int id = 7; id < 10; id++) {
+            assertEquals("kept row " + id, id * 10, cache.get(id));
+        }
+        //evicted rows leave the estimate
+        assertEquals("estimate", 80, cache.get(0));
+        //updates don't take new places
+        cache.put(9, 100);
+        assertEquals("rows after update", 3, cache.size());
+        assertTrue("row 7 after update", cache.contains(7));
+    }
+
+    private static void shrinkKeepsNewestRows() {
+        RowHeightCache cache = new RowHeightCache();
+        cache.setMaxRows(4);
+        for (int id = 0; id < 6; id++) {
+            cache.put(id, 10);
+        }
+        cache.setMaxRows(2);
+        assertEquals("rows after shrink", 2, cache.size());
+        assertTrue("newest rows are kept", cache.contains(4) && cache.contains(5));
+        cache.put(6, 40);
+        assertTrue("oldest row after shrink is evicted", !cache.contains(4));
+        assertEquals("estimate after shrink", 25, cache.get(0));
+        cache.setMaxRows(8);
+        cache.put(7, 10);
+        assertEquals("rows after growth", 3, cache.size());
+        assertTrue("kept rows after growth", cache.contains(5) && cache.contains(6) && cache.contains(7));
+    }
+}
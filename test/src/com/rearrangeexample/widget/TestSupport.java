@@ -0,0 +1,18 @@
+package com.rearrangeexample.widget;
+
+/**
+ * Checks shared by plain JVM tests of classes which don't depend on Android, a failed check throws AssertionError
+ */
+final class TestSupport {
+
+    private TestSupport() {
+    }
+
+    static void assertEquals(String message, long expected, long actual) {
+        if (expected != actual) throw new AssertionError(message + ": expected " + expected + " but was " + actual);
+    }
+
+    static void assertTrue(String message, boolean condition) {
+        if (!condition) throw new AssertionError(message);
+    }
+}